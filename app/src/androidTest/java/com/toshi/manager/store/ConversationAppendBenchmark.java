@@ -0,0 +1,118 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.store;
+
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.toshi.model.local.Conversation;
+import com.toshi.model.local.Group;
+import com.toshi.model.local.Recipient;
+import com.toshi.model.sofa.SofaMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ConversationAppendBenchmark {
+
+    private static final String TAG = "ConversationAppend";
+    private static final int MESSAGES_PER_ROUND = 1000;
+    private static final int ROUNDS = 10;
+    // Generous to keep the test stable on slow emulators; a scan of the thread is well over this.
+    private static final long MAX_SLOWDOWN_FACTOR = 3;
+
+    private Realm realm;
+    private Conversation conversation;
+    private final List<String> storedMessageIds = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        final RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("conversation-append-benchmark")
+                .inMemory()
+                .build();
+        this.realm = Realm.getInstance(config);
+        this.realm.beginTransaction();
+        final Recipient recipient = new Recipient(new Group(Collections.emptyList()));
+        this.conversation = this.realm.copyToRealmOrUpdate(new Conversation(recipient));
+        this.realm.commitTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        this.realm.close();
+    }
+
+    // Every round appends new messages and checks messages stored at the start of the thread,
+    // which is the worst case for a scan of the thread.
+    @Test
+    public void appendLatencyDoesNotGrowWithThreadLength() {
+        // The first round warms up the JIT and Realm
+        appendRound();
+        final long earlyRoundNanos = appendRound();
+        long lateRoundNanos = 0;
+        for (int i = 2; i < ROUNDS; i++) {
+            lateRoundNanos = appendRound();
+        }
+
+        final int threadLength = this.conversation.getAllMessages().size();
+        Log.d(TAG, "Append and duplicate check at " + threadLength + " messages: "
+                + (lateRoundNanos / MESSAGES_PER_ROUND / 1000) + "us per message, "
+                + (earlyRoundNanos / MESSAGES_PER_ROUND / 1000) + "us at " + (2 * MESSAGES_PER_ROUND));
+        assertThat(threadLength, is(MESSAGES_PER_ROUND * ROUNDS));
+        assertThat(lateRoundNanos, lessThan(earlyRoundNanos * MAX_SLOWDOWN_FACTOR));
+    }
+
+    private long appendRound() {
+        final long start = System.nanoTime();
+        this.realm.beginTransaction();
+        for (int i = 0; i < MESSAGES_PER_ROUND; i++) {
+            final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"" + i + "\"}");
+            if (!isInConversation(message.getPrivateKey())) {
+                ConversationStore.appendMessage(this.conversation, this.realm.copyToRealmOrUpdate(message), false);
+                this.storedMessageIds.add(message.getPrivateKey());
+            }
+            assertThat(isInConversation(this.storedMessageIds.get(i)), is(true));
+        }
+        this.realm.commitTransaction();
+        return System.nanoTime() - start;
+    }
+
+    private boolean isInConversation(final String privateKey) {
+        return ConversationStore.isInConversation(this.realm, this.conversation, privateKey);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.store;
+
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.toshi.model.local.Conversation;
+import com.toshi.model.local.Group;
+import com.toshi.model.local.PendingMessage;
+import com.toshi.model.local.Recipient;
+import com.toshi.model.sofa.SofaMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ConversationStoreAppendTest {
+
+    private Realm realm;
+    private Recipient recipient;
+    private Conversation conversation;
+
+    @Before
+    public void setup() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        final RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("conversation-store-append-test")
+                .inMemory()
+                .build();
+        this.realm = Realm.getInstance(config);
+        this.realm.beginTransaction();
+        this.recipient = new Recipient(new Group(Collections.emptyList()));
+        this.conversation = this.realm.copyToRealmOrUpdate(new Conversation(this.recipient));
+        this.realm.commitTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        this.realm.close();
+    }
+
+    @Test
+    public void appendedMessageIsInConversation() {
+        final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"hi\"}");
+        this.realm.beginTransaction();
+        final boolean isInConversationBefore = isInConversation(message);
+        ConversationStore.appendMessage(this.conversation, this.realm.copyToRealmOrUpdate(message), true);
+        final boolean isInConversationAfter = isInConversation(message);
+        this.realm.commitTransaction();
+
+        assertThat(isInConversationBefore, is(false));
+        assertThat(isInConversationAfter, is(true));
+        assertThat(this.conversation.getAllMessages().size(), is(1));
+        assertThat(this.conversation.getNumberOfUnread(), is(1));
+    }
+
+    @Test
+    public void pendingOfflineMessageIsNotTreatedAsDuplicate() {
+        final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"offline\"}");
+
+        // PendingMessageStore.save stores the message before the conversation write is committed
+        this.realm.beginTransaction();
+        this.realm.insertOrUpdate(new PendingMessage()
+                .setReceiver(this.recipient)
+                .setSofaMessage(message));
+        this.realm.commitTransaction();
+
+        this.realm.beginTransaction();
+        final boolean isInConversation = isInConversation(message);
+        if (!isInConversation) {
+            ConversationStore.appendMessage(this.conversation, this.realm.copyToRealmOrUpdate(message), false);
+        }
+        this.realm.commitTransaction();
+
+        assertThat(isInConversation, is(false));
+        assertThat(this.conversation.getAllMessages().size(), is(1));
+        assertThat(this.conversation.getLatestMessage().getPrivateKey(), is(message.getPrivateKey()));
+    }
+
+    @Test
+    public void messageRewrittenWithoutThreadIsStillInConversation() {
+        final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"rewritten\"}");
+        this.realm.beginTransaction();
+        ConversationStore.appendMessage(this.conversation, this.realm.copyToRealmOrUpdate(message), false);
+        // Other stores write the message back without knowing its thread
+        this.realm.insertOrUpdate(message.setThreadId(null));
+        final boolean isInConversation = isInConversation(message);
+        final String storedThreadId = this.realm
+                .where(SofaMessage.class)
+                .equalTo("privateKey", message.getPrivateKey())
+                .findFirst()
+                .getThreadId();
+        this.realm.commitTransaction();
+
+        assertThat(isInConversation, is(true));
+        assertThat(storedThreadId, is(this.conversation.getThreadId()));
+    }
+
+    @Test
+    public void messageInAnotherConversationIsNotInThisOne() {
+        final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"elsewhere\"}");
+        this.realm.beginTransaction();
+        final Recipient otherRecipient = new Recipient(new Group(Collections.emptyList()));
+        final Conversation otherConversation = this.realm.copyToRealmOrUpdate(new Conversation(otherRecipient));
+        ConversationStore.appendMessage(otherConversation, this.realm.copyToRealmOrUpdate(message), false);
+        final boolean isInConversation = isInConversation(message);
+        this.realm.commitTransaction();
+
+        assertThat(isInConversation, is(false));
+    }
+
+    private boolean isInConversation(final SofaMessage message) {
+        return ConversationStore.isInConversation(this.realm, this.conversation, message.getPrivateKey());
+    }
+}
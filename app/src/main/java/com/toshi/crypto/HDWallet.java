@@ -37,6 +37,7 @@ import org.bitcoinj.wallet.DeterministicSeed;
 import org.bitcoinj.wallet.KeyChain;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
+import org.spongycastle.util.encoders.Hex;
 
 import java.io.IOException;
 
@@ -48,6 +49,8 @@ public class HDWallet {
 
     private static final String ALIAS = "MasterSeedAlias";
     private static final String MASTER_SEED = "ms";
+    private static final String DERIVED_KEYS = "dk";
+    private static final String DERIVED_KEYS_SEPARATOR = ":";
 
     private SharedPreferences prefs;
     private ECKey identityKey;
@@ -62,12 +65,17 @@ public class HDWallet {
         this.prefs = preferences;
     }
 
+    // Uses the keys cached by a previous launch when possible; deriving them from
+    // the master seed runs PBKDF2 and builds a full HD wallet, which is slow.
     public Single<HDWallet> getExistingWallet() {
         return Single.fromCallable(() -> {
+            if (readDerivedKeysFromStorage()) return this;
+
             this.masterSeed = readMasterSeedFromStorage();
             if (this.masterSeed == null) throw new InvalidMasterSeedException(new Throwable("Master seed is null"));
             final Wallet wallet = initFromMasterSeed(this.masterSeed);
             deriveKeysFromWallet(wallet);
+            saveDerivedKeysToStorage();
 
             return this;
         });
@@ -78,6 +86,7 @@ public class HDWallet {
         return Single.fromCallable(() -> {
             final Wallet wallet = generateNewWallet();
             deriveKeysFromWallet(wallet);
+            saveDerivedKeysToStorage();
 
             return this;
         });
@@ -110,6 +119,7 @@ public class HDWallet {
                 final Wallet wallet = constructFromSeed(seed);
                 deriveKeysFromWallet(wallet);
                 saveMasterSeedToStorage(masterSeed);
+                saveDerivedKeysToStorage();
                 return this;
             } catch (final UnreadableWalletException | MnemonicException e) {
                 throw new InvalidMasterSeedException(e);
@@ -181,6 +191,9 @@ public class HDWallet {
     }
 
     public String getMasterSeed() {
+        if (this.masterSeed == null) {
+            this.masterSeed = readMasterSeedFromStorage();
+        }
         return this.masterSeed;
     }
 
@@ -244,6 +257,44 @@ public class HDWallet {
         }
     }
 
+    private void saveDerivedKeysToStorage() {
+        try {
+            final KeyStoreHandler keyStoreHandler = new KeyStoreHandler(BaseApplication.get(), ALIAS);
+            final String derivedKeys =
+                    Hex.toHexString(this.identityKey.getPrivKeyBytes())
+                    + DERIVED_KEYS_SEPARATOR
+                    + Hex.toHexString(this.paymentKey.getPrivKeyBytes());
+            saveDerivedKeys(keyStoreHandler.encrypt(derivedKeys));
+        } catch (KeyStoreException e) {
+            // The keys can always be derived again from the master seed
+            LogUtil.e(getClass(), "Unable to store derived keys. " + e);
+        }
+    }
+
+    private void saveDerivedKeys(final String derivedKeys) {
+        this.prefs.edit()
+                .putString(DERIVED_KEYS, derivedKeys)
+                .apply();
+    }
+
+    private boolean readDerivedKeysFromStorage() {
+        try {
+            final String encryptedDerivedKeys = this.prefs.getString(DERIVED_KEYS, null);
+            if (encryptedDerivedKeys == null) return false;
+            final KeyStoreHandler keyStoreHandler = new KeyStoreHandler(BaseApplication.get(), ALIAS);
+            final String[] derivedKeys = keyStoreHandler
+                    .decrypt(encryptedDerivedKeys, this::saveDerivedKeys)
+                    .split(DERIVED_KEYS_SEPARATOR);
+            if (derivedKeys.length != 2) return false;
+            this.identityKey = ECKey.fromPrivate(Hex.decode(derivedKeys[0]));
+            this.paymentKey = ECKey.fromPrivate(Hex.decode(derivedKeys[1]));
+            return true;
+        } catch (final KeyStoreException | RuntimeException e) {
+            LogUtil.e(getClass(), "Unable to read derived keys, deriving them from the master seed. " + e);
+            return false;
+        }
+    }
+
     public void clear() {
         this.prefs
                 .edit()
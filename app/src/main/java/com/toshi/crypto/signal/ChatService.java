@@ -23,6 +23,8 @@ import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.signal.model.SignalBootstrap;
 import com.toshi.crypto.signal.network.ChatInterface;
 import com.toshi.crypto.signal.store.ProtocolStore;
+import com.toshi.manager.network.ServerClock;
+import com.toshi.manager.network.SharedHttpClient;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.SigningInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
@@ -81,7 +83,7 @@ public final class ChatService extends SignalServiceAccountManager {
                 password,
                 userAgent);
         this.url = urls[0].getUrl();
-        this.client = new OkHttpClient.Builder();
+        this.client = SharedHttpClient.newBuilder();
         this.chatInterface = generateSignalInterface();
     }
 
@@ -145,8 +147,9 @@ public final class ChatService extends SignalServiceAccountManager {
             final SignedPreKeyRecord signedPreKey,
             final List<PreKeyRecord> preKeys) {
 
-        return this.chatInterface
-                .getTimestamp()
+        return ServerClock
+                .get()
+                .getTime()
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
                 .flatMapCompletable(
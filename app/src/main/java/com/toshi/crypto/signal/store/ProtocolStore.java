@@ -18,6 +18,8 @@
 package com.toshi.crypto.signal.store;
 
 
+import android.support.annotation.Nullable;
+
 import com.toshi.crypto.signal.SignalPreferences;
 import com.toshi.crypto.signal.util.PreKeyUtil;
 import com.toshi.crypto.util.HashUtil;
@@ -40,17 +42,16 @@ import org.whispersystems.libsignal.util.KeyHelper;
 import java.io.IOException;
 import java.util.List;
 
-public class ProtocolStore implements SignalProtocolStore {
+import rx.functions.Action0;
 
-    private static final int PREKEY_START = 1234;
-    private static final int PREKEY_COUNT = 100;
-    private static final int SIGNED_PREKEY_ID = 1;
+public class ProtocolStore implements SignalProtocolStore {
 
     private final PreKeyStore preKeyStore;
     private final SignedPreKeyStore signedPreKeyStore;
     private final IdentityKeyStore identityKeyStore;
     private final SignalSessionStore sessionStore;
     private List<PreKeyRecord> preKeyRecords;
+    private volatile Action0 onPreKeyRemoved;
 
     public ProtocolStore() {
         this.preKeyStore  = new SignalPreKeyStore();
@@ -82,6 +83,35 @@ public class ProtocolStore implements SignalProtocolStore {
         return pk;
     }
 
+    // Stored but not active, so it can be uploaded before it is used
+    public SignedPreKeyRecord generateNextSignedPreKey() {
+        return PreKeyUtil.generateSignedPreKey(BaseApplication.get(), getIdentityKeyPair(), false);
+    }
+
+    public void setActiveSignedPreKey(final SignedPreKeyRecord signedPreKey) {
+        PreKeyUtil.setActiveSignedPreKeyId(BaseApplication.get(), signedPreKey.getId());
+        SignalPreferences.setSignedPreKeyId(signedPreKey.getId());
+    }
+
+    // Removes signed pre-keys older than maxAge. The active key and the newest older key are
+    // always kept, as messages encrypted against the previous key may still be in flight.
+    public void pruneSignedPreKeys(final long maxAge) {
+        final int activeId = SignalPreferences.getSignedPreKeyId();
+        final long cutoff = System.currentTimeMillis() - maxAge;
+        SignedPreKeyRecord newestInactive = null;
+        for (final SignedPreKeyRecord record : loadSignedPreKeys()) {
+            if (record.getId() == activeId) continue;
+            if (newestInactive == null || record.getTimestamp() > newestInactive.getTimestamp()) {
+                newestInactive = record;
+            }
+        }
+
+        for (final SignedPreKeyRecord record : loadSignedPreKeys()) {
+            if (record.getId() == activeId || record == newestInactive) continue;
+            if (record.getTimestamp() < cutoff) removeSignedPreKey(record.getId());
+        }
+    }
+
     @Override
     public IdentityKeyPair getIdentityKeyPair() {
         final IdentityKeyPair ikp = identityKeyStore.getIdentityKeyPair();
@@ -136,20 +166,20 @@ public class ProtocolStore implements SignalProtocolStore {
         return identityKeyStore.isTrustedIdentity(address, identityKey, direction);
     }
 
+    // The batch sent with the initial registration
     public List<PreKeyRecord> getPreKeys() throws InvalidKeyIdException {
-        if (!preKeysHaveBeenGenerated()) generatePreKeys();
+        if (this.preKeyRecords == null) this.preKeyRecords = generatePreKeys();
         return this.preKeyRecords;
     }
 
-    private boolean preKeysHaveBeenGenerated() {
-        return this.preKeyStore.containsPreKey(PREKEY_START) && this.preKeyStore.containsPreKey(PREKEY_START + PREKEY_COUNT - 1);
+    // Generates and stores a new batch of one-time pre-keys
+    public List<PreKeyRecord> generatePreKeys() {
+        return PreKeyUtil.generatePreKeys(BaseApplication.get());
     }
 
-    private void generatePreKeys() {
-        this.preKeyRecords = PreKeyUtil.generatePreKeys(BaseApplication.get());
-        for (final PreKeyRecord preKeyRecord : preKeyRecords) {
-            storePreKey(preKeyRecord.getId(), preKeyRecord);
-        }
+    // Called whenever a one-time pre-key is used up by an incoming session
+    public void setOnPreKeyRemovedListener(@Nullable final Action0 onPreKeyRemoved) {
+        this.onPreKeyRemoved = onPreKeyRemoved;
     }
 
     public PreKeyRecord getLastResortKey() throws IOException {
@@ -198,6 +228,8 @@ public class ProtocolStore implements SignalProtocolStore {
     @Override
     public void removePreKey(int preKeyId) {
         preKeyStore.removePreKey(preKeyId);
+        final Action0 listener = this.onPreKeyRemoved;
+        if (listener != null) listener.call();
     }
 
     @Override
@@ -27,18 +27,28 @@ import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.SignalProtocolAddress;
 import org.whispersystems.libsignal.state.IdentityKeyStore;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import io.realm.Realm;
 
 public class SignalIdentityKeyStore implements IdentityKeyStore {
 
+    // Known identities by SignalIdentity id, loaded from Realm the first time they are needed
+    private final Map<String, IdentityKey> identities = new ConcurrentHashMap<>();
+    private boolean isIdentitiesLoaded = false;
+    private volatile IdentityKeyPair identityKeyPair;
+
     @Override
     public IdentityKeyPair getIdentityKeyPair() {
+        if (this.identityKeyPair != null) return this.identityKeyPair;
         try {
             final byte[] serializedKey = SignalPreferences.getSerializedIdentityKeyPair();
             if (serializedKey == null) {
                 return null;
             }
-            return new IdentityKeyPair(serializedKey);
+            this.identityKeyPair = new IdentityKeyPair(serializedKey);
+            return this.identityKeyPair;
         } catch (final InvalidKeyException ex) {
             throw new RuntimeException(ex);
         }
@@ -55,7 +65,12 @@ public class SignalIdentityKeyStore implements IdentityKeyStore {
             new SignalIdentity()
                 .setSignalProtocolAddress(address)
                 .setIdentityKey(identityKey);
+
+        loadIdentitiesIfNeeded();
+        if (identityKey.equals(this.identities.get(identity.getId()))) return true;
+
         writeObjectToDatabase(identity);
+        this.identities.put(identity.getId(), identityKey);
         return true;
     }
 
@@ -64,6 +79,21 @@ public class SignalIdentityKeyStore implements IdentityKeyStore {
         return saveIdentity(address, identityKey);
     }
 
+    private synchronized void loadIdentitiesIfNeeded() {
+        if (this.isIdentitiesLoaded) return;
+
+        final Realm realm = BaseApplication.get().getRealm();
+        try {
+            for (final SignalIdentity identity : realm.where(SignalIdentity.class).findAll()) {
+                final IdentityKey identityKey = identity.getIdentityKey();
+                if (identityKey != null) this.identities.put(identity.getId(), identityKey);
+            }
+        } finally {
+            realm.close();
+        }
+        this.isIdentitiesLoaded = true;
+    }
+
     private void writeObjectToDatabase(final SignalIdentity object) {
         final Realm realm = BaseApplication.get().getRealm();
         try {
@@ -74,4 +104,4 @@ public class SignalIdentityKeyStore implements IdentityKeyStore {
             realm.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -111,6 +111,19 @@ public class SignalPreKeyStore implements PreKeyStore, SignedPreKeyStore {
         }
     }
 
+    // Stores a whole batch under a single acquisition of the file lock
+    public void storePreKeys(List<PreKeyRecord> records) {
+        synchronized (FILE_LOCK) {
+            try {
+                for (PreKeyRecord record : records) {
+                    storeSerializedRecord(getPreKeyFile(record.getId()), record.serialize());
+                }
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
     @Override
     public void storeSignedPreKey(int signedPreKeyId, SignedPreKeyRecord record) {
         synchronized (FILE_LOCK) {
@@ -199,9 +212,15 @@ public class SignalPreKeyStore implements PreKeyStore, SignedPreKeyStore {
         RandomAccessFile recordFile = new RandomAccessFile(file, "rw");
         FileChannel      out        = recordFile.getChannel();
 
+        // Version marker, blob length and blob go out in a single write
+        ByteBuffer buffer = ByteBuffer.allocate(8 + serialized.length);
+        buffer.put(ByteUtil.intToByteArray(CURRENT_VERSION_MARKER));
+        buffer.put(ByteUtil.intToByteArray(serialized.length));
+        buffer.put(serialized);
+        buffer.flip();
+
         out.position(0);
-        writeInteger(CURRENT_VERSION_MARKER, out);
-        writeBlob(serialized, out);
+        while (buffer.hasRemaining()) out.write(buffer);
         out.truncate(out.position());
         recordFile.close();
     }
@@ -242,21 +261,12 @@ public class SignalPreKeyStore implements PreKeyStore, SignedPreKeyStore {
         return blobBytes;
     }
 
-    private void writeBlob(byte[] blobBytes, FileChannel out) throws IOException {
-        writeInteger(blobBytes.length, out);
-        out.write(ByteBuffer.wrap(blobBytes));
-    }
-
     private int readInteger(FileInputStream in) throws IOException {
         byte[] integer = new byte[4];
         in.read(integer, 0, integer.length);
         return ByteUtil.byteArrayToInt(integer);
     }
 
-    private void writeInteger(int value, FileChannel out) throws IOException {
-        byte[] valueBytes = ByteUtil.intToByteArray(value);
-        out.write(ByteBuffer.wrap(valueBytes));
-    }
 
 
 
@@ -20,6 +20,7 @@ package com.toshi.crypto.signal.store;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.LruCache;
 
 import com.toshi.crypto.util.ByteUtil;
 import com.toshi.util.LogUtil;
@@ -37,15 +38,21 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.whispersystems.libsignal.state.StorageProtos.SessionStructure;
 
 public class SignalSessionStore implements SessionStore {
 
     private static final String SESSIONS_DIRECTORY_V2 = "sessions-v2";
-    private static final Object FILE_LOCK             = new Object();
+    private static final int LOCK_STRIPES             = 32;
+    private static final int MAX_CACHED_SESSIONS      = 256;
 
     private static final int SINGLE_STATE_VERSION   = 1;
     private static final int ARCHIVE_STATES_VERSION = 2;
@@ -53,6 +60,17 @@ public class SignalSessionStore implements SessionStore {
     private static final int CURRENT_VERSION        = 3;
     private static final int DEFAULT_DEVICE_ID = 1;
 
+    // Sessions for different peers don't share a lock, so group sends don't serialise on one file lock
+    private static final Object[] LOCKS = createLocks();
+
+    // Sessions are cached serialized rather than as SessionRecords because SessionCipher
+    // mutates a loaded record before deciding whether to store it.
+    private static final LruCache<String, CachedSession> sessionCache = new LruCache<>(MAX_CACHED_SESSIONS);
+
+    // Recipient id to the non-default device ids that have a session, built from the directory once
+    private static final Map<String, Set<Integer>> subDeviceIndex = new HashMap<>();
+    private static boolean isSubDeviceIndexLoaded = false;
+
     @NonNull  private final Context context;
 
     public SignalSessionStore() {
@@ -61,66 +79,111 @@ public class SignalSessionStore implements SessionStore {
 
     @Override
     public SessionRecord loadSession(@NonNull final SignalProtocolAddress address) {
-        synchronized (FILE_LOCK) {
+        synchronized (getLock(address)) {
+            final CachedSession cachedSession = loadCachedSession(address);
+            if (cachedSession == null) {
+                LogUtil.w(getClass(), "No existing session information found.");
+                return new SessionRecord();
+            }
             try {
-                FileInputStream in            = new FileInputStream(getSessionFile(address));
-                int             versionMarker = readInteger(in);
+                return new SessionRecord(cachedSession.serialized);
+            } catch (final IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
 
-                if (versionMarker > CURRENT_VERSION) {
-                    throw new AssertionError("Unknown version: " + versionMarker);
-                }
+    private @Nullable CachedSession loadCachedSession(@NonNull final SignalProtocolAddress address) {
+        final String sessionName = getSessionName(address);
+        final CachedSession cachedSession = sessionCache.get(sessionName);
+        if (cachedSession != null) return cachedSession;
 
-                byte[] serialized = readBlob(in);
-                in.close();
+        final SessionRecord sessionRecord = readSessionFile(address);
+        if (sessionRecord == null) return null;
 
-                if (versionMarker < PLAINTEXT_VERSION) {
-                    throw new AssertionError("Session didn't get migrated: (" + versionMarker + "," + address + ")");
-                }
+        final CachedSession newCachedSession = new CachedSession(sessionRecord);
+        sessionCache.put(sessionName, newCachedSession);
+        return newCachedSession;
+    }
 
-                if (versionMarker == SINGLE_STATE_VERSION) {
-                    SessionStructure sessionStructure = SessionStructure.parseFrom(serialized);
-                    SessionState     sessionState     = new SessionState(sessionStructure);
-                    return new SessionRecord(sessionState);
-                } else if (versionMarker >= ARCHIVE_STATES_VERSION) {
-                    return new SessionRecord(serialized);
-                } else {
-                    throw new AssertionError("Unknown version: " + versionMarker);
-                }
-            } catch (final IOException e) {
-                LogUtil.w(getClass(), "No existing session information found.");
-                return new SessionRecord();
+    private @Nullable SessionRecord readSessionFile(@NonNull final SignalProtocolAddress address) {
+        try {
+            FileInputStream in            = new FileInputStream(getSessionFile(address));
+            int             versionMarker = readInteger(in);
+
+            if (versionMarker > CURRENT_VERSION) {
+                throw new AssertionError("Unknown version: " + versionMarker);
+            }
+
+            byte[] serialized = readBlob(in);
+            in.close();
+
+            if (versionMarker < PLAINTEXT_VERSION) {
+                throw new AssertionError("Session didn't get migrated: (" + versionMarker + "," + address + ")");
+            }
+
+            if (versionMarker == SINGLE_STATE_VERSION) {
+                SessionStructure sessionStructure = SessionStructure.parseFrom(serialized);
+                SessionState     sessionState     = new SessionState(sessionStructure);
+                return new SessionRecord(sessionState);
+            } else if (versionMarker >= ARCHIVE_STATES_VERSION) {
+                return new SessionRecord(serialized);
+            } else {
+                throw new AssertionError("Unknown version: " + versionMarker);
             }
+        } catch (final IOException e) {
+            return null;
         }
     }
 
     @Override
     public void storeSession(@NonNull final SignalProtocolAddress address, @NonNull final SessionRecord record) {
-        synchronized (FILE_LOCK) {
-            try {
-                RandomAccessFile sessionFile  = new RandomAccessFile(getSessionFile(address), "rw");
-                FileChannel      out          = sessionFile.getChannel();
+        synchronized (getLock(address)) {
+            final String sessionName = getSessionName(address);
+            final CachedSession previousSession = sessionCache.get(sessionName);
+            final CachedSession newSession = new CachedSession(record);
+            if (previousSession != null && Arrays.equals(previousSession.serialized, newSession.serialized)) {
+                // Nothing changed, so the file is already up to date
+                return;
+            }
+
+            writeSessionFile(address, newSession.serialized);
+            sessionCache.put(sessionName, newSession);
+            addToSubDeviceIndex(address);
+        }
+    }
 
-                out.position(0);
-                writeInteger(CURRENT_VERSION, out);
-                writeBlob(record.serialize(), out);
-                out.truncate(out.position());
+    private void writeSessionFile(@NonNull final SignalProtocolAddress address, @NonNull final byte[] serialized) {
+        try {
+            RandomAccessFile sessionFile  = new RandomAccessFile(getSessionFile(address), "rw");
+            FileChannel      out          = sessionFile.getChannel();
 
-                sessionFile.close();
-            } catch (IOException e) {
-                throw new AssertionError(e);
-            }
+            out.position(0);
+            writeInteger(CURRENT_VERSION, out);
+            writeBlob(serialized, out);
+            out.truncate(out.position());
+
+            sessionFile.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
         }
     }
 
     @Override
     public boolean containsSession(final SignalProtocolAddress address) {
-        return getSessionFile(address).exists() &&
-                loadSession(address).getSessionState().hasSenderChain();
+        synchronized (getLock(address)) {
+            final CachedSession cachedSession = loadCachedSession(address);
+            return cachedSession != null && cachedSession.hasSenderChain;
+        }
     }
 
     @Override
     public void deleteSession(final SignalProtocolAddress address) {
-        getSessionFile(address).delete();
+        synchronized (getLock(address)) {
+            getSessionFile(address).delete();
+            sessionCache.remove(getSessionName(address));
+            removeFromSubDeviceIndex(address);
+        }
     }
 
     @Override
@@ -139,6 +202,11 @@ public class SignalSessionStore implements SessionStore {
         for (final String sessionName : sessionNames) {
             deleteAllSessions(sessionName);
         }
+        sessionCache.evictAll();
+        synchronized (subDeviceIndex) {
+            subDeviceIndex.clear();
+            isSubDeviceIndexLoaded = false;
+        }
     }
 
     private List<String> getAllSessions() {
@@ -161,46 +229,86 @@ public class SignalSessionStore implements SessionStore {
     @Override
     public List<Integer> getSubDeviceSessions(final String name) {
         final String recipientId = name.split(":")[0];
-
-        final List<Integer> results = new LinkedList<>();
-        final File parent = getSessionDirectory();
-        final String[] children = parent.list();
-
-        if (children == null) {
-            return results;
+        synchronized (subDeviceIndex) {
+            loadSubDeviceIndexIfNeeded();
+            final Set<Integer> deviceIds = subDeviceIndex.get(recipientId);
+            return deviceIds == null ? new LinkedList<>() : new LinkedList<>(deviceIds);
         }
+    }
 
-        for (final String child : children) {
-            final String[] parts = child.split("[.]", 2);
-            final String sessionRecipientId = parts[0];
+    private void loadSubDeviceIndexIfNeeded() {
+        if (isSubDeviceIndexLoaded) return;
 
-            if (sessionRecipientId.equals(recipientId) && parts.length > 1) {
-                results.add(Integer.parseInt(parts[1]));
+        final String[] children = getSessionDirectory().list();
+        if (children != null) {
+            for (final String child : children) {
+                final String[] parts = child.split("[.]", 2);
+                if (parts.length > 1) {
+                    getOrCreateDeviceIds(parts[0]).add(Integer.parseInt(parts[1]));
+                }
             }
         }
+        isSubDeviceIndexLoaded = true;
+    }
 
-        return results;
+    private void addToSubDeviceIndex(final SignalProtocolAddress address) {
+        if (address.getDeviceId() == SignalServiceAddress.DEFAULT_DEVICE_ID) return;
+        synchronized (subDeviceIndex) {
+            if (!isSubDeviceIndexLoaded) return;
+            getOrCreateDeviceIds(address.getName()).add(address.getDeviceId());
+        }
     }
 
+    private void removeFromSubDeviceIndex(final SignalProtocolAddress address) {
+        synchronized (subDeviceIndex) {
+            final Set<Integer> deviceIds = subDeviceIndex.get(address.getName());
+            if (deviceIds == null) return;
+            deviceIds.remove(address.getDeviceId());
+            if (deviceIds.isEmpty()) subDeviceIndex.remove(address.getName());
+        }
+    }
 
+    private Set<Integer> getOrCreateDeviceIds(final String recipientId) {
+        Set<Integer> deviceIds = subDeviceIndex.get(recipientId);
+        if (deviceIds == null) {
+            deviceIds = new HashSet<>();
+            subDeviceIndex.put(recipientId, deviceIds);
+        }
+        return deviceIds;
+    }
 
     public void migrateSessions() {
-        synchronized (FILE_LOCK) {
-            File directory = getSessionDirectory();
-
-            for (File session : directory.listFiles()) {
-                if (session.isFile()) {
-                    SignalProtocolAddress address = getAddressName(session);
-
-                    if (address != null) {
-                        SessionRecord sessionRecord = loadSession(address);
-                        storeSession(address, sessionRecord);
+        File directory = getSessionDirectory();
+
+        for (File session : directory.listFiles()) {
+            if (session.isFile()) {
+                SignalProtocolAddress address = getAddressName(session);
+
+                if (address != null) {
+                    synchronized (getLock(address)) {
+                        SessionRecord sessionRecord = readSessionFile(address);
+                        if (sessionRecord != null) {
+                            writeSessionFile(address, sessionRecord.serialize());
+                            sessionCache.remove(getSessionName(address));
+                        }
                     }
                 }
             }
         }
     }
 
+    private static Object[] createLocks() {
+        final Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private Object getLock(final SignalProtocolAddress address) {
+        return LOCKS[(address.getName().hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
     private File getSessionFile(final SignalProtocolAddress address) {
         return new File(getSessionDirectory(), getSessionName(address));
     }
@@ -260,4 +368,14 @@ public class SignalSessionStore implements SessionStore {
         out.write(ByteBuffer.wrap(valueBytes));
     }
 
+    private static class CachedSession {
+        private final byte[] serialized;
+        private final boolean hasSenderChain;
+
+        private CachedSession(final SessionRecord record) {
+            this.serialized = record.serialize();
+            this.hasSenderChain = record.getSessionState().hasSenderChain();
+        }
+    }
+
 }
\ No newline at end of file
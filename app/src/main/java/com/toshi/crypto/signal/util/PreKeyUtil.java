@@ -76,9 +76,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
+import rx.Single;
+import rx.schedulers.Schedulers;
+
 
 public class PreKeyUtil {
 
@@ -87,20 +90,46 @@ public class PreKeyUtil {
     private static final int BATCH_SIZE = 100;
 
     public static List<PreKeyRecord> generatePreKeys(Context context) {
-        PreKeyStore preKeyStore    = new SignalPreKeyStore();
-        List<PreKeyRecord> records        = new LinkedList<>();
+        SignalPreKeyStore  preKeyStore    = new SignalPreKeyStore();
         int                preKeyIdOffset = getNextPreKeyId(context);
+        List<PreKeyRecord> records        = generatePreKeyRecords(preKeyIdOffset, BATCH_SIZE);
 
-        for (int i=0;i<BATCH_SIZE;i++) {
-            int          preKeyId = (preKeyIdOffset + i) % Medium.MAX_VALUE;
-            ECKeyPair    keyPair  = Curve.generateKeyPair();
-            PreKeyRecord record   = new PreKeyRecord(preKeyId, keyPair);
+        preKeyStore.storePreKeys(records);
+        setNextPreKeyId(context, (preKeyIdOffset + BATCH_SIZE + 1) % Medium.MAX_VALUE);
+        return records;
+    }
 
-            preKeyStore.storePreKey(preKeyId, record);
-            records.add(record);
+    // Key generation dominates, so the batch is split into one chunk per core
+    private static List<PreKeyRecord> generatePreKeyRecords(final int preKeyIdOffset, final int count) {
+        final int chunkCount = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+        final int chunkSize  = (count + chunkCount - 1) / chunkCount;
+        final List<Single<List<PreKeyRecord>>> chunks = new ArrayList<>(chunkCount);
+
+        for (int start = 0; start < count; start += chunkSize) {
+            final int chunkStart = start;
+            final int chunkEnd   = Math.min(count, start + chunkSize);
+            chunks.add(Single.fromCallable(() -> generatePreKeyRange(preKeyIdOffset, chunkStart, chunkEnd))
+                             .subscribeOn(Schedulers.computation()));
         }
 
-        setNextPreKeyId(context, (preKeyIdOffset + BATCH_SIZE + 1) % Medium.MAX_VALUE);
+        return Single.zip(chunks, results -> {
+            final List<PreKeyRecord> records = new ArrayList<>(count);
+            for (final Object result : results) {
+                @SuppressWarnings("unchecked")
+                final List<PreKeyRecord> chunk = (List<PreKeyRecord>) result;
+                records.addAll(chunk);
+            }
+            return records;
+        }).toBlocking().value();
+    }
+
+    private static List<PreKeyRecord> generatePreKeyRange(final int preKeyIdOffset, final int start, final int end) {
+        final List<PreKeyRecord> records = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            final int       preKeyId = (preKeyIdOffset + i) % Medium.MAX_VALUE;
+            final ECKeyPair keyPair  = Curve.generateKeyPair();
+            records.add(new PreKeyRecord(preKeyId, keyPair));
+        }
         return records;
     }
 
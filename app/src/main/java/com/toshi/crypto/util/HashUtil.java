@@ -23,22 +23,93 @@ import com.toshi.crypto.cryptohash.Keccak256;
 import org.spongycastle.util.Arrays;
 import org.whispersystems.signalservice.internal.util.Base64;
 
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
+import okio.Buffer;
+
 public class HashUtil {
 
+    private static final int DIGEST_LENGTH = 32;
+    private static final int CHUNK_SIZE = 8192;
+
+    // Keccak256 keeps its state in arrays that are expensive to allocate, so each thread reuses one
+    private static final ThreadLocal<Keccak256> digests = new ThreadLocal<Keccak256>() {
+        @Override
+        protected Keccak256 initialValue() {
+            return new Keccak256();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
     public static byte[] sha3omit12(byte[] input) {
         byte[] hash = sha3(input);
         return Arrays.copyOfRange(hash, 12, hash.length);
     }
 
     public static byte[] sha3(byte[] input) {
-        Keccak256 digest = new Keccak256();
-        digest.update(input);
+        return getDigest().digest(input);
+    }
+
+    /**
+     * Hashes {@code length} bytes of {@code input} and writes the 32 byte hash into
+     * {@code output}, starting at {@code outputOffset}.
+     */
+    public static void sha3(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        if (output.length - outputOffset < DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Output needs room for " + DIGEST_LENGTH + " bytes");
+        }
+        final Keccak256 digest = getDigest();
+        digest.update(input, offset, length);
+        digest.digest(output, outputOffset, DIGEST_LENGTH);
+    }
+
+    /**
+     * Hashes the remaining bytes of {@code input}, leaving its position at the limit.
+     */
+    public static byte[] sha3(ByteBuffer input) {
+        final Keccak256 digest = getDigest();
+        if (input.hasArray()) {
+            digest.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+        } else {
+            final byte[] chunk = chunks.get();
+            while (input.hasRemaining()) {
+                final int length = Math.min(chunk.length, input.remaining());
+                input.get(chunk, 0, length);
+                digest.update(chunk, 0, length);
+            }
+        }
         return digest.digest();
     }
 
+    /**
+     * Hashes and consumes the contents of {@code input} without copying it into one array.
+     */
+    public static byte[] sha3(Buffer input) {
+        final Keccak256 digest = getDigest();
+        final byte[] chunk = chunks.get();
+        while (input.size() > 0) {
+            final int length = input.read(chunk, 0, chunk.length);
+            digest.update(chunk, 0, length);
+        }
+        return digest.digest();
+    }
+
+    private static Keccak256 getDigest() {
+        final Keccak256 digest = digests.get();
+        // A previous caller may have failed halfway through hashing
+        digest.reset();
+        return digest;
+    }
+
     public static String getSecret(final int size) {
         byte[] secret = getSecretBytes(size);
         return Base64.encodeBytes(secret);
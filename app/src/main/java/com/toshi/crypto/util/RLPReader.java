@@ -0,0 +1,207 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto.util;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads RLP encoded data in place. Unlike {@link RLP#decode2(byte[])} nothing is copied while
+ * walking the structure: a reader is a cursor over a range of one shared buffer, and items are
+ * exposed as offsets and lengths into that buffer. Bytes are only copied when asked for explicitly.
+ *
+ * <pre>
+ * final RLPReader tx = new RLPReader(rawTransaction).readList();
+ * final BigInteger nonce = tx.readBigInteger();
+ * </pre>
+ */
+public class RLPReader {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private int position;
+
+    // Header of the element at headerPosition, parsed lazily and reused until the cursor moves
+    private int headerPosition = -1;
+    private int payloadOffset;
+    private int payloadLength;
+    private boolean isList;
+
+    public RLPReader(final byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    // Reads from the buffer's position to its limit without changing either
+    public RLPReader(final ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    private RLPReader(final ByteBuffer buffer, final int start, final int end) {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+    }
+
+    public boolean hasNext() {
+        return this.position < this.end;
+    }
+
+    public boolean isNextList() {
+        readHeader();
+        return this.isList;
+    }
+
+    // Offset of the next element's payload, relative to the underlying buffer
+    public int nextOffset() {
+        readHeader();
+        return this.payloadOffset;
+    }
+
+    public int nextLength() {
+        readHeader();
+        return this.payloadLength;
+    }
+
+    public void skip() {
+        readHeader();
+        this.position = this.payloadOffset + this.payloadLength;
+    }
+
+    // A reader over the items of the next element, which must be a list
+    public RLPReader readList() {
+        readHeader();
+        if (!this.isList) throw new RuntimeException("RLP wrong encoding (expected a list at " + this.position + ")");
+        final RLPReader list = new RLPReader(this.buffer, this.payloadOffset, this.payloadOffset + this.payloadLength);
+        this.position = this.payloadOffset + this.payloadLength;
+        return list;
+    }
+
+    // A read-only view of the next item's payload
+    public ByteBuffer readSlice() {
+        readItemHeader();
+        final ByteBuffer slice = this.buffer.duplicate();
+        slice.limit(this.payloadOffset + this.payloadLength);
+        slice.position(this.payloadOffset);
+        this.position = this.payloadOffset + this.payloadLength;
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    // A read-only view of the next element including its header, e.g. for hashing
+    public ByteBuffer readEncoded() {
+        readHeader();
+        final int start = this.position;
+        final ByteBuffer slice = this.buffer.duplicate();
+        slice.limit(this.payloadOffset + this.payloadLength);
+        slice.position(start);
+        this.position = this.payloadOffset + this.payloadLength;
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    public byte[] readBytes() {
+        readItemHeader();
+        final byte[] bytes = new byte[this.payloadLength];
+        final ByteBuffer view = this.buffer.duplicate();
+        view.position(this.payloadOffset);
+        view.get(bytes);
+        this.position = this.payloadOffset + this.payloadLength;
+        return bytes;
+    }
+
+    public BigInteger readBigInteger() {
+        final byte[] magnitude = readBytes();
+        return magnitude.length == 0 ? BigInteger.ZERO : new BigInteger(1, magnitude);
+    }
+
+    public long readLong() {
+        readItemHeader();
+        if (this.payloadLength > 8) throw new RuntimeException("RLP item too long for a long (" + this.payloadLength + " bytes)");
+        long value = 0;
+        for (int i = 0; i < this.payloadLength; i++) {
+            value = (value << 8) | (this.buffer.get(this.payloadOffset + i) & 0xFF);
+        }
+        this.position = this.payloadOffset + this.payloadLength;
+        return value;
+    }
+
+    public int readInt() {
+        final long value = readLong();
+        if (value > Integer.MAX_VALUE) throw new RuntimeException("RLP item too long for an int (" + value + ")");
+        return (int) value;
+    }
+
+    private void readItemHeader() {
+        readHeader();
+        if (this.isList) throw new RuntimeException("RLP wrong encoding (expected an item at " + this.position + ")");
+    }
+
+    private void readHeader() {
+        if (this.headerPosition == this.position) return;
+        if (this.position >= this.end) throw new RuntimeException("RLP read past the end of the data");
+
+        final int prefix = this.buffer.get(this.position) & 0xFF;
+        if (prefix < OFFSET_SHORT_ITEM) {
+            // A single byte is its own encoding
+            this.isList = false;
+            this.payloadOffset = this.position;
+            this.payloadLength = 1;
+        } else if (prefix <= OFFSET_LONG_ITEM) {
+            this.isList = false;
+            this.payloadOffset = this.position + 1;
+            this.payloadLength = prefix - OFFSET_SHORT_ITEM;
+        } else if (prefix < OFFSET_SHORT_LIST) {
+            final int lengthOfLength = prefix - OFFSET_LONG_ITEM;
+            this.isList = false;
+            this.payloadOffset = this.position + 1 + lengthOfLength;
+            this.payloadLength = readLength(this.position + 1, lengthOfLength);
+        } else if (prefix <= OFFSET_LONG_LIST) {
+            this.isList = true;
+            this.payloadOffset = this.position + 1;
+            this.payloadLength = prefix - OFFSET_SHORT_LIST;
+        } else {
+            final int lengthOfLength = prefix - OFFSET_LONG_LIST;
+            this.isList = true;
+            this.payloadOffset = this.position + 1 + lengthOfLength;
+            this.payloadLength = readLength(this.position + 1, lengthOfLength);
+        }
+
+        if (this.payloadOffset > this.end || this.payloadLength > this.end - this.payloadOffset) {
+            throw new RuntimeException("RLP wrong encoding (element at " + this.position + " runs past the end of the data)");
+        }
+        this.headerPosition = this.position;
+    }
+
+    private int readLength(final int offset, final int lengthOfLength) {
+        if (lengthOfLength > 4 || offset + lengthOfLength > this.end) {
+            throw new RuntimeException("RLP wrong encoding (invalid length at " + this.position + ")");
+        }
+        long length = 0;
+        for (int i = 0; i < lengthOfLength; i++) {
+            length = (length << 8) | (this.buffer.get(offset + i) & 0xFF);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new RuntimeException("RLP wrong encoding (invalid length at " + this.position + ")");
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto.util;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes RLP straight into one growable buffer, producing the same output as
+ * {@link RLP#encodeElement(byte[])} and {@link RLP#encodeList(byte[]...)} without building
+ * an intermediate array per element.
+ *
+ * List headers depend on the length of the list, so there are two ways of writing a list.
+ * If the payload length is known up front, e.g. from {@link #encodedLength(byte[])}, write
+ * {@link #writeListHeader(int)} followed by the items. Otherwise wrap the items in
+ * {@link #startList()} and {@link #endList()}, which moves the payload along once to make
+ * room for the header.
+ */
+public class RLPWriter {
+
+    private static final int SIZE_THRESHOLD = 56;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private byte[] buffer;
+    private int size;
+    private int[] openLists;
+    private int depth;
+
+    public RLPWriter() {
+        this(256);
+    }
+
+    public RLPWriter(final int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+        this.openLists = new int[4];
+    }
+
+    public RLPWriter writeBytes(final byte[] data) {
+        if (data == null) return writeBytes(ByteUtil.EMPTY_BYTE_ARRAY, 0, 0);
+        return writeBytes(data, 0, data.length);
+    }
+
+    public RLPWriter writeBytes(final byte[] data, final int offset, final int length) {
+        if (length == 1 && (data[offset] & 0xFF) < OFFSET_SHORT_ITEM) {
+            ensureCapacity(1);
+            this.buffer[this.size++] = data[offset];
+            return this;
+        }
+        ensureCapacity(headerLength(length) + length);
+        writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+        System.arraycopy(data, offset, this.buffer, this.size, length);
+        this.size += length;
+        return this;
+    }
+
+    // Zero is encoded as the empty item, as in RLP.encodeBigInteger
+    public RLPWriter writeBigInteger(final BigInteger value) {
+        if (value.signum() < 0) throw new IllegalArgumentException("RLP can't encode negative numbers");
+        if (value.bitLength() <= 63) return writeLong(value.longValue());
+
+        final byte[] bytes = value.toByteArray();
+        final int leadingZero = bytes[0] == 0 ? 1 : 0;
+        return writeBytes(bytes, leadingZero, bytes.length - leadingZero);
+    }
+
+    public RLPWriter writeLong(final long value) {
+        if (value < 0) throw new IllegalArgumentException("RLP can't encode negative numbers");
+        if (value == 0) {
+            ensureCapacity(1);
+            this.buffer[this.size++] = (byte) OFFSET_SHORT_ITEM;
+            return this;
+        }
+        if (value < OFFSET_SHORT_ITEM) {
+            ensureCapacity(1);
+            this.buffer[this.size++] = (byte) value;
+            return this;
+        }
+
+        final int length = byteLength(value);
+        ensureCapacity(1 + length);
+        this.buffer[this.size++] = (byte) (OFFSET_SHORT_ITEM + length);
+        for (int i = length - 1; i >= 0; i--) {
+            this.buffer[this.size++] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    public RLPWriter writeInt(final int value) {
+        return writeLong(value);
+    }
+
+    // Appends bytes that are already RLP encoded
+    public RLPWriter writeEncoded(final byte[] encoded) {
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, this.buffer, this.size, encoded.length);
+        this.size += encoded.length;
+        return this;
+    }
+
+    public RLPWriter writeListHeader(final int payloadLength) {
+        ensureCapacity(headerLength(payloadLength));
+        writeHeader(payloadLength, OFFSET_SHORT_LIST, OFFSET_LONG_LIST);
+        return this;
+    }
+
+    public RLPWriter startList() {
+        if (this.depth == this.openLists.length) {
+            this.openLists = Arrays.copyOf(this.openLists, this.depth * 2);
+        }
+        this.openLists[this.depth++] = this.size;
+        return this;
+    }
+
+    public RLPWriter endList() {
+        if (this.depth == 0) throw new IllegalStateException("endList called without a matching startList");
+        final int start = this.openLists[--this.depth];
+        final int payloadLength = this.size - start;
+        final int headerLength = headerLength(payloadLength);
+
+        ensureCapacity(headerLength);
+        System.arraycopy(this.buffer, start, this.buffer, start + headerLength, payloadLength);
+        this.size = start;
+        writeHeader(payloadLength, OFFSET_SHORT_LIST, OFFSET_LONG_LIST);
+        this.size += payloadLength;
+        return this;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public byte[] toByteArray() {
+        checkListsClosed();
+        return Arrays.copyOf(this.buffer, this.size);
+    }
+
+    // A read-only view of the encoded bytes, valid until the writer is written to again
+    public ByteBuffer asByteBuffer() {
+        checkListsClosed();
+        return ByteBuffer.wrap(this.buffer, 0, this.size).asReadOnlyBuffer();
+    }
+
+    public void reset() {
+        this.size = 0;
+        this.depth = 0;
+    }
+
+    // Size of the encoding of data, so list lengths can be worked out before writing
+    public static int encodedLength(final byte[] data) {
+        if (data == null || data.length == 0) return 1;
+        if (data.length == 1 && (data[0] & 0xFF) < OFFSET_SHORT_ITEM) return 1;
+        return headerLength(data.length) + data.length;
+    }
+
+    public static int encodedLength(final long value) {
+        if (value < OFFSET_SHORT_ITEM) return 1;
+        return 1 + byteLength(value);
+    }
+
+    public static int encodedListLength(final int payloadLength) {
+        return headerLength(payloadLength) + payloadLength;
+    }
+
+    private static int headerLength(final int length) {
+        if (length < SIZE_THRESHOLD) return 1;
+        return 1 + byteLength(length);
+    }
+
+    private static int byteLength(final long value) {
+        return (64 - Long.numberOfLeadingZeros(value) + 7) / 8;
+    }
+
+    private void writeHeader(final int length, final int shortOffset, final int longOffset) {
+        if (length < SIZE_THRESHOLD) {
+            this.buffer[this.size++] = (byte) (shortOffset + length);
+            return;
+        }
+        final int lengthOfLength = byteLength(length);
+        this.buffer[this.size++] = (byte) (longOffset + lengthOfLength);
+        for (int i = lengthOfLength - 1; i >= 0; i--) {
+            this.buffer[this.size++] = (byte) (length >>> (8 * i));
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        final int required = this.size + extra;
+        if (required <= this.buffer.length) return;
+        this.buffer = Arrays.copyOf(this.buffer, Math.max(required, this.buffer.length * 2));
+    }
+
+    private void checkListsClosed() {
+        if (this.depth != 0) throw new IllegalStateException(this.depth + " list(s) still open");
+    }
+}
@@ -24,6 +24,7 @@ import android.content.SharedPreferences;
 import com.toshi.crypto.HDWallet;
 import com.toshi.manager.network.CurrencyService;
 import com.toshi.manager.network.EthereumService;
+import com.toshi.manager.network.ServerClock;
 import com.toshi.model.local.Network;
 import com.toshi.model.local.Networks;
 import com.toshi.model.network.Balance;
@@ -59,12 +60,14 @@ public class BalanceManager {
     private final static BehaviorSubject<Balance> balanceObservable = BehaviorSubject.create();
     private static final String LAST_KNOWN_BALANCE = "lkb";
 
+    private final ExchangeRateCache exchangeRateCache;
     private HDWallet wallet;
     private SharedPreferences prefs;
     private Networks networks;
     private Subscription connectivitySub;
 
     /* package */ BalanceManager() {
+        this.exchangeRateCache = new ExchangeRateCache();
     }
 
     public BehaviorSubject<Balance> getBalanceObservable() {
@@ -148,18 +151,16 @@ public class BalanceManager {
     }
 
     private Single<ExchangeRate> getLocalCurrencyExchangeRate() {
+        return getLocalCurrencyExchangeRate(ExchangeRateCache.DISPLAY_MAX_AGE_MS);
+    }
+
+    private Single<ExchangeRate> getLocalCurrencyExchangeRate(final long maxAgeMs) {
         return getLocalCurrency()
-                .flatMap((code) -> fetchLatestExchangeRate(code)
+                .flatMap((code) -> this.exchangeRateCache.getRate(code, maxAgeMs)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread()));
     }
 
-    private Single<ExchangeRate> fetchLatestExchangeRate(final String code) {
-        return CurrencyService
-                .getApi()
-                .getRates(code);
-    }
-
     public Single<Currencies> getCurrencies() {
         return CurrencyService
                 .getApi()
@@ -209,8 +210,9 @@ public class BalanceManager {
         });
     }
 
+    // Used to price payments, so an old cached rate is refetched rather than served
     public Single<BigDecimal> convertLocalCurrencyToEth(final BigDecimal localAmount) {
-        return getLocalCurrencyExchangeRate()
+        return getLocalCurrencyExchangeRate(ExchangeRateCache.PAYMENT_MAX_AGE_MS)
                 .flatMap((exchangeRate) -> mapToEth(exchangeRate, localAmount));
     }
 
@@ -279,9 +281,9 @@ public class BalanceManager {
 
     public Completable unregisterFromEthGcm(final String token) {
         final String currentNetworkId = this.networks.getCurrentNetwork().getId();
-        return EthereumService
-                .getApi()
-                .getTimestamp()
+        return ServerClock
+                .get()
+                .getTime()
                 .subscribeOn(Schedulers.io())
                 .flatMapCompletable((st) -> unregisterEthGcmWithTimestamp(token, st))
                 .doOnCompleted(() -> GcmPrefsUtil.setEthGcmTokenSentToServer(currentNetworkId, false));
@@ -307,9 +309,9 @@ public class BalanceManager {
     }
 
     private Completable registerEthGcmToken(final String token) {
-        return EthereumService
-                .getApi()
-                .getTimestamp()
+        return ServerClock
+                .get()
+                .getTime()
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
                 .flatMapCompletable((st) -> registerEthGcmWithTimestamp(token, st))
@@ -0,0 +1,167 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager;
+
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.toshi.manager.network.CurrencyService;
+import com.toshi.model.adapter.BigDecimalAdapter;
+import com.toshi.model.network.ExchangeRate;
+import com.toshi.util.FileNames;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rx.Observable;
+import rx.Single;
+import rx.schedulers.Schedulers;
+
+// Keeps the latest exchange rate per currency in memory and in shared preferences.
+// A cached rate younger than the caller's max age is served straight away; if it is
+// older than FRESH_FOR_MS it is refreshed in the background. Anything older than the
+// max age, or a currency that has never been fetched, waits for the network.
+/* package */ class ExchangeRateCache {
+
+    private static final long FRESH_FOR_MS = 60 * 1000;
+    /* package */ static final long DISPLAY_MAX_AGE_MS = 60 * 60 * 1000;
+    /* package */ static final long PAYMENT_MAX_AGE_MS = 5 * 60 * 1000;
+    private static final String FETCHED_AT_SUFFIX = "_fetched_at";
+
+    private final ConcurrentMap<String, CachedRate> rates;
+    private final ConcurrentMap<String, Observable<ExchangeRate>> inFlightRequests;
+    private final JsonAdapter<ExchangeRate> jsonAdapter;
+    private SharedPreferences prefs;
+
+    /* package */ ExchangeRateCache() {
+        this.rates = new ConcurrentHashMap<>();
+        this.inFlightRequests = new ConcurrentHashMap<>();
+        this.jsonAdapter = new Moshi.Builder()
+                .add(new BigDecimalAdapter())
+                .build()
+                .adapter(ExchangeRate.class);
+    }
+
+    /* package */ Single<ExchangeRate> getRate(final String currencyCode, final long maxAgeMs) {
+        final CachedRate cachedRate = getCachedRate(currencyCode);
+        if (cachedRate == null || cachedRate.isOlderThan(maxAgeMs)) {
+            return fetchRate(currencyCode).toSingle();
+        }
+
+        if (cachedRate.isStale()) {
+            refreshInBackground(currencyCode);
+        }
+        return Single.just(cachedRate.rate);
+    }
+
+    private @Nullable CachedRate getCachedRate(final String currencyCode) {
+        final CachedRate cachedRate = this.rates.get(currencyCode);
+        if (cachedRate != null) return cachedRate;
+
+        final CachedRate persistedRate = readPersistedRate(currencyCode);
+        if (persistedRate != null) {
+            this.rates.putIfAbsent(currencyCode, persistedRate);
+        }
+        return persistedRate;
+    }
+
+    private void refreshInBackground(final String currencyCode) {
+        fetchRate(currencyCode)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        __ -> {},
+                        throwable -> LogUtil.w(getClass(), "Unable to refresh exchange rate. " + throwable)
+                );
+    }
+
+    // Concurrent requests for the same currency share one network call
+    private Observable<ExchangeRate> fetchRate(final String currencyCode) {
+        final Observable<ExchangeRate> existingRequest = this.inFlightRequests.get(currencyCode);
+        if (existingRequest != null) return existingRequest;
+
+        final Observable<ExchangeRate> request = CurrencyService
+                .getApi()
+                .getRates(currencyCode)
+                .toObservable()
+                .doOnNext(exchangeRate -> cacheRate(currencyCode, exchangeRate))
+                .doOnTerminate(() -> this.inFlightRequests.remove(currencyCode))
+                .cache();
+
+        final Observable<ExchangeRate> racingRequest = this.inFlightRequests.putIfAbsent(currencyCode, request);
+        return racingRequest != null ? racingRequest : request;
+    }
+
+    private void cacheRate(final String currencyCode, final ExchangeRate exchangeRate) {
+        final CachedRate cachedRate = new CachedRate(exchangeRate, System.currentTimeMillis());
+        this.rates.put(currencyCode, cachedRate);
+        getPrefs()
+                .edit()
+                .putString(currencyCode, this.jsonAdapter.toJson(exchangeRate))
+                .putLong(currencyCode + FETCHED_AT_SUFFIX, cachedRate.fetchedAt)
+                .apply();
+    }
+
+    private @Nullable CachedRate readPersistedRate(final String currencyCode) {
+        final String json = getPrefs().getString(currencyCode, null);
+        if (json == null) return null;
+
+        try {
+            final ExchangeRate exchangeRate = this.jsonAdapter.fromJson(json);
+            if (exchangeRate == null || exchangeRate.getRate() == null) return null;
+            final long fetchedAt = getPrefs().getLong(currencyCode + FETCHED_AT_SUFFIX, 0);
+            return new CachedRate(exchangeRate, fetchedAt);
+        } catch (final IOException ex) {
+            LogUtil.w(getClass(), "Unable to read cached exchange rate. " + ex);
+            return null;
+        }
+    }
+
+    private SharedPreferences getPrefs() {
+        if (this.prefs == null) {
+            this.prefs = BaseApplication.get().getSharedPreferences(FileNames.EXCHANGE_RATE_PREFS, Context.MODE_PRIVATE);
+        }
+        return this.prefs;
+    }
+
+    private static class CachedRate {
+        private final ExchangeRate rate;
+        private final long fetchedAt;
+
+        private CachedRate(final ExchangeRate rate, final long fetchedAt) {
+            this.rate = rate;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private boolean isStale() {
+            return isOlderThan(FRESH_FOR_MS);
+        }
+
+        // A rate from the future means the clock was changed, so its age is unknown
+        private boolean isOlderThan(final long ageMs) {
+            final long age = System.currentTimeMillis() - this.fetchedAt;
+            return age < 0 || age > ageMs;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager;
+
+
+import android.support.annotation.Nullable;
+
+import com.toshi.crypto.util.ByteUtil;
+import com.toshi.crypto.util.RLP;
+import com.toshi.crypto.util.RLPReader;
+import com.toshi.crypto.util.TypeConverter;
+import com.toshi.model.network.UnsignedTransaction;
+import com.toshi.model.sofa.Payment;
+import com.toshi.util.LogUtil;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Builds unsigned payment transactions on the device, so sending a payment only needs
+// the call that submits it. The values the device can't work out itself (the nonce,
+// gas price, chain id and the gas limit for a recipient) are learnt from the skeletons
+// returned by /v1/tx/skel. build returns null whenever any of them is missing or stale,
+// and the caller falls back to asking the server for a skeleton.
+/* package */ class LocalTransactionBuilder {
+
+    private static final long GAS_PRICE_MAX_AGE_MS = ToshiManager.CACHE_TIMEOUT;
+    private static final int MAX_RECIPIENTS = 64;
+    private static final int UNSIGNED_FIELD_COUNT = 6;
+
+    // Next nonce to use per sending address, including transactions that are still pending
+    private final Map<String, BigInteger> nextNonces;
+    private final Map<String, BigInteger> gasLimits;
+    private BigInteger gasPrice;
+    private long gasPriceUpdatedAt;
+    // Null until a skeleton has been seen; the chain id of EIP-155 skeletons, ZERO for legacy ones
+    private BigInteger chainId;
+
+    /* package */ LocalTransactionBuilder() {
+        this.nextNonces = new HashMap<>();
+        this.gasLimits = new LinkedHashMap<String, BigInteger>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, BigInteger> eldest) {
+                return size() > MAX_RECIPIENTS;
+            }
+        };
+    }
+
+    /* package */ synchronized @Nullable UnsignedTransaction build(final Payment payment) {
+        final String from = normalise(payment.getFromAddress());
+        final String to = normalise(payment.getToAddress());
+        if (from == null || to == null || this.chainId == null) return null;
+        if (System.currentTimeMillis() - this.gasPriceUpdatedAt > GAS_PRICE_MAX_AGE_MS) return null;
+
+        final BigInteger nonce = this.nextNonces.get(from);
+        final BigInteger gasLimit = this.gasLimits.get(to);
+        if (nonce == null || gasLimit == null) return null;
+
+        final byte[] toBytes;
+        try {
+            toBytes = TypeConverter.StringHexToByteArray(to);
+        } catch (final Exception ex) {
+            LogUtil.w(getClass(), "Invalid recipient address " + ex);
+            return null;
+        }
+
+        final byte[] encoded = encode(
+                nonce,
+                this.gasPrice,
+                gasLimit,
+                toBytes,
+                TypeConverter.StringHexToBigInteger(payment.getValue()),
+                this.chainId);
+        this.nextNonces.put(from, nonce.add(BigInteger.ONE));
+        return new UnsignedTransaction().setTransaction(TypeConverter.toJsonHex(encoded));
+    }
+
+    // Remembers the values from a server skeleton built for payment
+    /* package */ synchronized void learnFrom(final Payment payment, final UnsignedTransaction skeleton) {
+        final String from = normalise(payment.getFromAddress());
+        final String to = normalise(payment.getToAddress());
+        if (from == null || to == null || skeleton.getTransaction() == null) return;
+
+        try {
+            final RLPReader fields = new RLPReader(TypeConverter.StringHexToByteArray(skeleton.getTransaction())).readList();
+            final BigInteger nonce = fields.readBigInteger();
+            final BigInteger gasPrice = fields.readBigInteger();
+            final BigInteger gasLimit = fields.readBigInteger();
+            final byte[] skeletonTo = fields.readBytes();
+            final BigInteger value = fields.readBigInteger();
+            final int dataLength = fields.nextLength();
+            fields.skip();
+            final BigInteger chainId = fields.hasNext() ? readUnsignedChainId(fields) : BigInteger.ZERO;
+
+            final boolean matchesPayment = dataLength == 0
+                    && Arrays.equals(skeletonTo, TypeConverter.StringHexToByteArray(to))
+                    && value.equals(TypeConverter.StringHexToBigInteger(payment.getValue()));
+            if (chainId == null || !matchesPayment) {
+                LogUtil.w(getClass(), "Skeleton doesn't match the payment, not learning from it");
+                return;
+            }
+
+            final BigInteger nextNonce = nonce.add(BigInteger.ONE);
+            final BigInteger currentNonce = this.nextNonces.get(from);
+            this.nextNonces.put(from, currentNonce == null ? nextNonce : nextNonce.max(currentNonce));
+            this.gasLimits.put(to, gasLimit);
+            this.gasPrice = gasPrice;
+            this.gasPriceUpdatedAt = System.currentTimeMillis();
+            this.chainId = chainId;
+        } catch (final Exception ex) {
+            LogUtil.w(getClass(), "Unable to read transaction skeleton " + ex);
+        }
+    }
+
+    // The nonce can no longer be trusted, e.g. after a transaction was rejected or failed
+    /* package */ synchronized void invalidate(final String fromAddress) {
+        final String from = normalise(fromAddress);
+        if (from != null) this.nextNonces.remove(from);
+    }
+
+    /* package */ synchronized void clear() {
+        this.nextNonces.clear();
+        this.gasLimits.clear();
+        this.gasPrice = null;
+        this.gasPriceUpdatedAt = 0;
+        this.chainId = null;
+    }
+
+    /* package */ static byte[] encode(final BigInteger nonce,
+                                       final BigInteger gasPrice,
+                                       final BigInteger gasLimit,
+                                       final byte[] to,
+                                       final BigInteger value,
+                                       final BigInteger chainId) {
+        final byte[][] fields = new byte[chainId.signum() == 0 ? UNSIGNED_FIELD_COUNT : UNSIGNED_FIELD_COUNT + 3][];
+        fields[0] = RLP.encodeBigInteger(nonce);
+        fields[1] = RLP.encodeBigInteger(gasPrice);
+        fields[2] = RLP.encodeBigInteger(gasLimit);
+        fields[3] = RLP.encodeElement(to);
+        fields[4] = RLP.encodeBigInteger(value);
+        fields[5] = RLP.encodeElement(ByteUtil.EMPTY_BYTE_ARRAY);
+        if (chainId.signum() != 0) {
+            // EIP-155: the chain id followed by empty r and s
+            fields[6] = RLP.encodeBigInteger(chainId);
+            fields[7] = RLP.encodeElement(ByteUtil.EMPTY_BYTE_ARRAY);
+            fields[8] = RLP.encodeElement(ByteUtil.EMPTY_BYTE_ARRAY);
+        }
+        return RLP.encodeList(fields);
+    }
+
+    // Returns null if the trailing fields aren't an unsigned EIP-155 chain id
+    private static BigInteger readUnsignedChainId(final RLPReader fields) {
+        final BigInteger chainId = fields.readBigInteger();
+        if (!fields.hasNext() || fields.readBigInteger().signum() != 0) return null;
+        if (!fields.hasNext() || fields.readBigInteger().signum() != 0) return null;
+        if (fields.hasNext() || chainId.signum() == 0) return null;
+        return chainId;
+    }
+
+    private static String normalise(final String address) {
+        return address == null ? null : address.toLowerCase(Locale.US);
+    }
+}
@@ -36,7 +36,7 @@ public class OnboardingManager {
         BaseApplication
                 .get()
                 .getUserManager()
-                .getCurrentUser()
+                .awaitCurrentUser()
                 .doOnSuccess(__ -> SharedPrefsUtil.setHasOnboarded(true))
                 .subscribe(
                         currentUser -> sendInitMessage(currentUser, onboardingBot),
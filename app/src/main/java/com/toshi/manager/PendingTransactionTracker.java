@@ -0,0 +1,206 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager;
+
+
+import android.util.Pair;
+
+import com.toshi.model.local.PendingTransaction;
+import com.toshi.model.sofa.Payment;
+import com.toshi.model.sofa.SofaType;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+// Polls the status of unconfirmed transactions until they are confirmed or fail.
+// Young transactions are polled often, the interval doubles for every AGE_STEP_MS
+// a transaction has been waiting, up to MAX_POLL_INTERVAL_MS. At most BATCH_SIZE
+// transactions are polled per round. Only status changes are reported.
+/* package */ class PendingTransactionTracker {
+
+    private static final long BASE_POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_POLL_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long AGE_STEP_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private final Map<String, TrackedTransaction> trackedTransactions;
+    private final Action1<Payment> onStatusChanged;
+    private Subscription scheduledPoll;
+    private long scheduledPollTime;
+    private boolean isPolling;
+
+    /* package */ PendingTransactionTracker(final Action1<Payment> onStatusChanged) {
+        this.trackedTransactions = new HashMap<>();
+        this.onStatusChanged = onStatusChanged;
+        this.scheduledPollTime = Long.MAX_VALUE;
+    }
+
+    /* package */ void trackAll(final List<PendingTransaction> pendingTransactions) {
+        synchronized (this) {
+            for (final PendingTransaction pendingTransaction : pendingTransactions) {
+                addOrRemove(pendingTransaction);
+            }
+        }
+        scheduleNextPoll();
+    }
+
+    /* package */ void track(final PendingTransaction pendingTransaction) {
+        trackAll(Collections.singletonList(pendingTransaction));
+    }
+
+    /* package */ synchronized void stop() {
+        cancelScheduledPoll();
+        this.trackedTransactions.clear();
+    }
+
+    private void addOrRemove(final PendingTransaction pendingTransaction) {
+        final String txHash = pendingTransaction.getTxHash();
+        if (txHash == null) return;
+        if (!pendingTransaction.isUnconfirmed()) {
+            this.trackedTransactions.remove(txHash);
+            return;
+        }
+        if (this.trackedTransactions.containsKey(txHash)) return;
+        this.trackedTransactions.put(txHash, new TrackedTransaction(txHash, pendingTransaction.getCreatedTime()));
+    }
+
+    private synchronized void scheduleNextPoll() {
+        if (this.isPolling) return;
+
+        long nextPollTime = Long.MAX_VALUE;
+        for (final TrackedTransaction trackedTransaction : this.trackedTransactions.values()) {
+            nextPollTime = Math.min(nextPollTime, trackedTransaction.nextPollTime);
+        }
+
+        if (nextPollTime == Long.MAX_VALUE) {
+            cancelScheduledPoll();
+            return;
+        }
+        if (this.scheduledPoll != null && this.scheduledPollTime <= nextPollTime) return;
+
+        cancelScheduledPoll();
+        final long delay = Math.max(0, nextPollTime - System.currentTimeMillis());
+        this.scheduledPollTime = nextPollTime;
+        this.scheduledPoll = Observable
+                .timer(delay, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(
+                        __ -> pollDueTransactions(),
+                        throwable -> LogUtil.exception(getClass(), "Error scheduling transaction poll", throwable)
+                );
+    }
+
+    private void cancelScheduledPoll() {
+        if (this.scheduledPoll != null) this.scheduledPoll.unsubscribe();
+        this.scheduledPoll = null;
+        this.scheduledPollTime = Long.MAX_VALUE;
+    }
+
+    private void pollDueTransactions() {
+        final List<TrackedTransaction> batch = takeDueBatch();
+        Observable
+                .from(batch)
+                .flatMap(this::fetchStatus, MAX_CONCURRENT_REQUESTS)
+                .subscribeOn(Schedulers.io())
+                .doAfterTerminate(this::finishPolling)
+                .subscribe(
+                        this::handleStatus,
+                        throwable -> LogUtil.exception(getClass(), "Error polling transactions", throwable)
+                );
+    }
+
+    private synchronized List<TrackedTransaction> takeDueBatch() {
+        this.scheduledPoll = null;
+        this.scheduledPollTime = Long.MAX_VALUE;
+        this.isPolling = true;
+
+        final long now = System.currentTimeMillis();
+        final List<TrackedTransaction> dueTransactions = new ArrayList<>();
+        for (final TrackedTransaction trackedTransaction : this.trackedTransactions.values()) {
+            if (trackedTransaction.nextPollTime <= now) dueTransactions.add(trackedTransaction);
+        }
+        Collections.sort(dueTransactions, (first, second) -> first.nextPollTime < second.nextPollTime ? -1 : (first.nextPollTime == second.nextPollTime ? 0 : 1));
+
+        final List<TrackedTransaction> batch = dueTransactions.subList(0, Math.min(BATCH_SIZE, dueTransactions.size()));
+        for (final TrackedTransaction trackedTransaction : batch) {
+            trackedTransaction.nextPollTime = now + trackedTransaction.getPollInterval(now);
+        }
+        return new ArrayList<>(batch);
+    }
+
+    private Observable<Pair<String, Payment>> fetchStatus(final TrackedTransaction trackedTransaction) {
+        return BaseApplication
+                .get()
+                .getBalanceManager()
+                .getTransactionStatus(trackedTransaction.txHash)
+                .map(payment -> new Pair<>(trackedTransaction.txHash, payment))
+                .toObservable()
+                .onErrorResumeNext(throwable -> {
+                    LogUtil.e(getClass(), "Unable to fetch status of " + trackedTransaction.txHash + " " + throwable);
+                    return Observable.empty();
+                });
+    }
+
+    private void handleStatus(final Pair<String, Payment> txStatus) {
+        final Payment payment = txStatus.second;
+        // No payment means the node doesn't know about the transaction yet
+        if (payment == null || SofaType.UNCONFIRMED.equals(payment.getStatus())) return;
+
+        synchronized (this) {
+            if (this.trackedTransactions.remove(txStatus.first) == null) return;
+        }
+        if (payment.getTxHash() == null) payment.setTxHash(txStatus.first);
+        this.onStatusChanged.call(payment);
+    }
+
+    private void finishPolling() {
+        synchronized (this) {
+            this.isPolling = false;
+        }
+        scheduleNextPoll();
+    }
+
+    private static class TrackedTransaction {
+        private final String txHash;
+        private final long createdTime;
+        private long nextPollTime;
+
+        private TrackedTransaction(final String txHash, final long createdTime) {
+            this.txHash = txHash;
+            this.createdTime = createdTime;
+            // Transactions restored from the database are polled straight away
+            this.nextPollTime = createdTime + BASE_POLL_INTERVAL_MS;
+        }
+
+        private long getPollInterval(final long now) {
+            final long ageSteps = Math.min(16, Math.max(0, now - this.createdTime) / AGE_STEP_MS);
+            return Math.min(MAX_POLL_INTERVAL_MS, BASE_POLL_INTERVAL_MS << ageSteps);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.toshi.manager;
 
 
 import com.toshi.manager.network.IdService;
+import com.toshi.manager.network.ServerClock;
 import com.toshi.manager.store.BlockedUserStore;
 import com.toshi.manager.store.ContactStore;
 import com.toshi.manager.store.GroupStore;
@@ -34,7 +35,14 @@ import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import rx.Completable;
 import rx.Observable;
@@ -43,6 +51,9 @@ import rx.schedulers.Schedulers;
 
 public class RecipientManager {
 
+    private static final int MAX_CONCURRENT_USER_FETCHES = 4;
+
+    private final ConcurrentHashMap<String, Observable<User>> inFlightUserFetches = new ConcurrentHashMap<>();
     private ContactStore contactStore;
     private GroupStore groupStore;
     private UserStore userStore;
@@ -75,7 +86,7 @@ public class RecipientManager {
         return Single
                 .concat(
                         this.userStore.loadForToshiId(toshiId).toSingle(),
-                        this.fetchAndCacheFromNetworkByToshiId(toshiId))
+                        Single.defer(() -> this.fetchAndCacheFromNetworkByToshiId(toshiId)))
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
                 .first(this::isUserFresh)
@@ -83,6 +94,40 @@ public class RecipientManager {
                 .toSingle();
     }
 
+    // Reads all cached users in one query and only goes to the network for those
+    // that are missing or stale. The result is not ordered.
+    public Single<List<User>> getUsers(final Collection<String> toshiIds) {
+        return Single
+                .fromCallable(() -> this.userStore.loadForToshiIds(toshiIds))
+                .flatMap(cachedUsers -> fetchMissingUsers(toshiIds, cachedUsers))
+                .subscribeOn(Schedulers.io())
+                .observeOn(Schedulers.io())
+                .doOnError(t -> LogUtil.exception(getClass(), "getUsers", t));
+    }
+
+    private Single<List<User>> fetchMissingUsers(final Collection<String> toshiIds, final List<User> cachedUsers) {
+        final Map<String, User> users = new LinkedHashMap<>();
+        for (final User cachedUser : cachedUsers) {
+            if (isUserFresh(cachedUser)) users.put(cachedUser.getToshiId(), cachedUser);
+        }
+
+        final Set<String> missingToshiIds = new LinkedHashSet<>(toshiIds);
+        missingToshiIds.removeAll(users.keySet());
+        if (missingToshiIds.isEmpty()) return Single.just(new ArrayList<>(users.values()));
+
+        return Observable
+                .from(missingToshiIds)
+                .flatMap(toshiId -> fetchAndCacheFromNetworkByToshiId(toshiId).toObservable(), MAX_CONCURRENT_USER_FETCHES)
+                .toList()
+                .map(fetchedUsers -> {
+                    for (final User fetchedUser : fetchedUsers) {
+                        users.put(fetchedUser.getToshiId(), fetchedUser);
+                    }
+                    return (List<User>) new ArrayList<>(users.values());
+                })
+                .toSingle();
+    }
+
     private boolean isUserFresh(final User user) {
         if (user == null) return false;
         if (!BaseApplication.get().isConnected()) return true;
@@ -102,13 +147,23 @@ public class RecipientManager {
                 .toSingle();
     }
 
+    // Concurrent lookups of the same user share one request
     private Single<User> fetchAndCacheFromNetworkByToshiId(final String userAddress) {
-        return IdService
+        final Observable<User> existingFetch = this.inFlightUserFetches.get(userAddress);
+        if (existingFetch != null) return existingFetch.toSingle();
+
+        final Observable<User> fetch = IdService
                 .getApi()
                 .getUser(userAddress)
+                .toObservable()
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
-                .doOnSuccess(this::cacheUser);
+                .doOnNext(this::cacheUser)
+                .doOnTerminate(() -> this.inFlightUserFetches.remove(userAddress))
+                .cache();
+
+        final Observable<User> racingFetch = this.inFlightUserFetches.putIfAbsent(userAddress, fetch);
+        return racingFetch != null ? racingFetch.toSingle() : fetch.toSingle();
     }
 
     private Observable<User> fetchAndCacheFromNetworkByPaymentAddress(final String paymentAddress) {
@@ -191,9 +246,9 @@ public class RecipientManager {
     }
 
     public Single<ServerTime> getTimestamp() {
-        return IdService
-                .getApi()
-                .getTimestamp();
+        return ServerClock
+                .get()
+                .getTime();
     }
 
     public void clear() {
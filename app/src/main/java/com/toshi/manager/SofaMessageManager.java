@@ -18,6 +18,7 @@
 package com.toshi.manager;
 
 
+import android.support.annotation.Nullable;
 import android.util.Pair;
 
 import com.toshi.BuildConfig;
@@ -27,18 +28,20 @@ import com.toshi.crypto.signal.ChatService;
 import com.toshi.crypto.signal.SignalPreferences;
 import com.toshi.crypto.signal.store.ProtocolStore;
 import com.toshi.crypto.signal.store.SignalTrustStore;
+import com.toshi.manager.chat.PreKeyManager;
 import com.toshi.manager.chat.SofaMessageReceiver;
 import com.toshi.manager.chat.SofaMessageRegistration;
 import com.toshi.manager.chat.SofaMessageSender;
 import com.toshi.manager.model.SofaMessageTask;
 import com.toshi.manager.store.ConversationStore;
-import com.toshi.model.local.Conversation;
+import com.toshi.model.local.ConversationSummary;
 import com.toshi.model.local.Group;
 import com.toshi.model.local.Recipient;
 import com.toshi.model.local.User;
 import com.toshi.model.sofa.Init;
 import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.util.GcmPrefsUtil;
 import com.toshi.util.LocaleUtil;
 import com.toshi.util.LogUtil;
@@ -46,8 +49,8 @@ import com.toshi.view.BaseApplication;
 
 import org.whispersystems.signalservice.internal.configuration.SignalServiceUrl;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeoutException;
 
 import rx.Completable;
 import rx.Observable;
@@ -61,9 +64,12 @@ public final class SofaMessageManager {
 
     private final SignalServiceUrl[] signalServiceUrls;
     private final String userAgent;
+    private final StartupStage<ProtocolStore> storesStage = new StartupStage<>("Signal stores");
+    private final StartupStage<SofaMessageReceiver> receiverStage = new StartupStage<>("Signal receiver");
 
     private ChatService chatService;
     private ProtocolStore protocolStore;
+    private PreKeyManager preKeyManager;
     private SofaMessageReceiver messageReceiver;
     private SofaMessageRegistration sofaGcmRegister;
     private SofaMessageSender messageSender;
@@ -145,18 +151,26 @@ public final class SofaMessageManager {
         }
     }
 
-    public final Single<List<Conversation>> loadAllConversations() {
+    public final Single<List<ConversationSummary>> loadAllConversations() {
         return Single
                 .fromCallable(conversationStore::loadAll)
                 .subscribeOn(Schedulers.io());
     }
 
-    public final Single<Conversation> loadConversation(final String threadId) {
+    public final Single<ConversationSummary> loadConversation(final String threadId) {
         return this.conversationStore.loadByThreadId(threadId)
                 .subscribeOn(Schedulers.io());
     }
 
-    public Completable deleteConversation(final Conversation conversation) {
+    // Loads a page of messages stored before the message with id beforeMessageId, ordered oldest first
+    public final Single<List<SofaMessage>> loadMessages(final String threadId, @Nullable final String beforeMessageId, final int limit) {
+        return Single
+                .fromCallable(() -> this.conversationStore.loadMessages(threadId, beforeMessageId, limit))
+                .doOnSuccess(SofaPayloadCache.get()::preload)
+                .subscribeOn(Schedulers.io());
+    }
+
+    public Completable deleteConversation(final ConversationSummary conversation) {
         return this.conversationStore
                 .deleteByThreadId(conversation.getThreadId())
                 .subscribeOn(Schedulers.io());
@@ -167,7 +181,7 @@ public final class SofaMessageManager {
                 .deleteMessageById(recipient, sofaMessage);
     }
 
-    public final Observable<Conversation> registerForAllConversationChanges() {
+    public final Observable<ConversationSummary> registerForAllConversationChanges() {
         return this.conversationStore.getConversationChangedObservable();
     }
 
@@ -185,10 +199,8 @@ public final class SofaMessageManager {
         this.conversationStore.stopListeningForChanges(threadId);
     }
 
-    public final Single<Boolean> areUnreadMessages() {
-        return Single
-                .fromCallable(conversationStore::areUnreadMessages)
-                .subscribeOn(Schedulers.io());
+    public final Observable<Integer> getUnreadCountObservable() {
+        return this.conversationStore.getUnreadCountObservable();
     }
 
     public Single<SofaMessage> getSofaMessageById(final String id) {
@@ -197,9 +209,13 @@ public final class SofaMessageManager {
     }
 
     private Completable initEverything() {
+        this.storesStage.markStarted();
+        this.receiverStage.markStarted();
         generateStores();
+        this.storesStage.markReady(this.protocolStore);
         initMessageReceiver();
         initMessageSender();
+        this.receiverStage.markReady(this.messageReceiver);
         return initRegistrationTask()
                 .onErrorComplete()
                 .doOnCompleted(this::attachConnectivityObserver);
@@ -239,6 +255,7 @@ public final class SofaMessageManager {
                 trustStore);
         this.signalServiceUrls[0] = signalServiceUrl;
         this.chatService = new ChatService(this.signalServiceUrls, this.wallet, this.protocolStore, this.userAgent);
+        this.preKeyManager = new PreKeyManager(this.chatService, this.protocolStore);
     }
 
     private void initMessageReceiver() {
@@ -280,6 +297,7 @@ public final class SofaMessageManager {
     }
 
     private void handleRegistrationCompleted() {
+        if (this.preKeyManager != null) this.preKeyManager.refreshInBackground();
         if (this.messageReceiver == null) return;
         this.messageReceiver.receiveMessagesAsync();
     }
@@ -302,33 +320,53 @@ public final class SofaMessageManager {
         this.messageSender.sendPendingMessage(sofaMessage);
     }
 
-    public SofaMessage fetchLatestMessage() throws TimeoutException {
+    // Reads and stores all queued messages within budgetMs, see SofaMessageReceiver.drainPendingMessages.
+    // Waiting for Signal to be initialised counts towards the budget.
+    public List<SofaMessage> drainPendingMessages(final long budgetMs, final long idleTimeoutMs) {
+        final long startedAt = System.currentTimeMillis();
+        final SofaMessageReceiver receiver;
         try {
-            while (this.messageReceiver == null) {
-                Thread.sleep(200);
-            }
+            receiver = this.receiverStage.awaitBlocking(budgetMs);
         } catch (final InterruptedException e) {
-            throw new TimeoutException(e.toString());
+            LogUtil.w(getClass(), "Interrupted while waiting for message receiver. " + e);
+            return new ArrayList<>(0);
         }
-        return this.messageReceiver.fetchLatestMessage();
+
+        if (receiver == null) {
+            LogUtil.w(getClass(), "Message receiver not ready within " + budgetMs + "ms, nothing drained");
+            return new ArrayList<>(0);
+        }
+        final long remainingMs = budgetMs - (System.currentTimeMillis() - startedAt);
+        return receiver.drainPendingMessages(Math.max(0, remainingMs), idleTimeoutMs);
     }
 
     public void clear() {
+        this.storesStage.reset();
         clearMessageReceiver();
         clearMessageSender();
         clearGcmRegistration();
         clearConnectivitySubscription();
+        clearPreKeyManager();
+        this.conversationStore.clearUnreadCounter();
         this.protocolStore.deleteAllSessions();
         GcmPrefsUtil.clear();
     }
 
     private void clearMessageReceiver() {
+        this.receiverStage.reset();
         if (this.messageReceiver != null) {
-            this.messageReceiver.shutdown();
+            this.messageReceiver.destroy();
             this.messageReceiver = null;
         }
     }
 
+    private void clearPreKeyManager() {
+        if (this.preKeyManager != null) {
+            this.preKeyManager.clear();
+            this.preKeyManager = null;
+        }
+    }
+
     private void clearMessageSender() {
         if (this.messageSender != null) {
             this.messageSender.clear();
@@ -0,0 +1,109 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager;
+
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.toshi.util.LogUtil;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rx.Single;
+import rx.subjects.BehaviorSubject;
+
+// A startup dependency such as the wallet or the database. Anything waiting on a
+// stage is released as soon as it is marked ready, and the time it took to get
+// ready is logged. A stage can be reset, e.g. on sign out, and made ready again.
+/* package */ class StartupStage<T> {
+
+    private final String name;
+    private final BehaviorSubject<T> subject;
+    private volatile CountDownLatch latch;
+    private volatile T value;
+    private long startedAt;
+
+    /* package */ StartupStage(final String name) {
+        this.name = name;
+        this.subject = BehaviorSubject.create();
+        this.latch = new CountDownLatch(1);
+        this.startedAt = SystemClock.elapsedRealtime();
+    }
+
+    /* package */ void markStarted() {
+        this.startedAt = SystemClock.elapsedRealtime();
+    }
+
+    // The subject is updated under the same lock as the value, so that a concurrent reset
+    // can't overtake the emission and leave the subject empty while the stage is ready.
+    /* package */ void markReady(final T value) {
+        synchronized (this) {
+            this.value = value;
+            this.latch.countDown();
+            this.subject.onNext(value);
+        }
+        LogUtil.d(getClass(), this.name + " ready in " + (SystemClock.elapsedRealtime() - this.startedAt) + "ms");
+    }
+
+    /* package */ void reset() {
+        synchronized (this) {
+            this.value = null;
+            // Keep waiters on the current latch if it hasn't been released yet
+            if (this.latch.getCount() == 0) this.latch = new CountDownLatch(1);
+            this.subject.onNext(null);
+        }
+    }
+
+    /* package */ boolean isReady() {
+        return this.value != null;
+    }
+
+    /* package */ @Nullable T peek() {
+        return this.value;
+    }
+
+    // Emits on the thread that marks the stage ready, or straight away if it already is
+    /* package */ Single<T> await() {
+        return this.subject
+                .filter(value -> value != null)
+                .first()
+                .toSingle();
+    }
+
+    // Blocks the calling thread until the stage is ready
+    /* package */ T awaitBlocking() throws InterruptedException {
+        while (true) {
+            final T current = this.value;
+            if (current != null) return current;
+            this.latch.await();
+        }
+    }
+
+    // Blocks the calling thread until the stage is ready, returns null if it isn't within timeoutMs
+    /* package */ @Nullable T awaitBlocking(final long timeoutMs) throws InterruptedException {
+        final long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (true) {
+            final T current = this.value;
+            if (current != null) return current;
+            final long remainingMs = deadline - SystemClock.elapsedRealtime();
+            if (remainingMs <= 0 || !this.latch.await(remainingMs, TimeUnit.MILLISECONDS)) return this.value;
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package com.toshi.manager;
 
 
+import android.os.SystemClock;
+
 import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.signal.SignalPreferences;
 import com.toshi.manager.store.DbMigration;
@@ -34,13 +36,13 @@ import io.realm.RealmConfiguration;
 import rx.Completable;
 import rx.Single;
 import rx.schedulers.Schedulers;
-import rx.subjects.BehaviorSubject;
 
 public class ToshiManager {
 
     public static final long CACHE_TIMEOUT = 1000 * 60 * 5;
 
-    private final BehaviorSubject<HDWallet> walletSubject = BehaviorSubject.create();
+    private final StartupStage<HDWallet> walletStage = new StartupStage<>("Wallet");
+    private final StartupStage<RealmConfiguration> realmStage = new StartupStage<>("Realm");
 
     private AppsManager appsManager;
     private BalanceManager balanceManager;
@@ -51,19 +53,18 @@ public class ToshiManager {
     private RecipientManager recipientManager;
     private ReputationManager reputationManager;
     private ExecutorService singleExecutor;
-    private boolean areManagersInitialised = false;
-    private RealmConfiguration realmConfig;
+    private volatile boolean areManagersInitialised = false;
+    private volatile long initStartedAt;
 
     public ToshiManager() {
         this.singleExecutor = Executors.newSingleThreadExecutor();
         this.appsManager = new AppsManager();
         this.balanceManager = new BalanceManager();
-        this.userManager = new UserManager();
+        this.userManager = new UserManager(this.walletStage);
         this.reputationManager = new ReputationManager();
         this.sofaMessageManager = new SofaMessageManager();
         this.transactionManager = new TransactionManager();
         this.recipientManager = new RecipientManager();
-        this.walletSubject.onNext(null);
 
         tryInit()
                 .subscribe(
@@ -77,6 +78,7 @@ public class ToshiManager {
             return Completable.complete();
         }
 
+        markInitStarted();
         return new HDWallet()
                 .createWallet()
                 .doOnSuccess(this::setWallet)
@@ -87,6 +89,7 @@ public class ToshiManager {
     }
 
     public Completable init(final HDWallet wallet) {
+        markInitStarted();
         this.setWallet(wallet);
         return initManagers()
                 .doOnError(__ -> clearUserData())
@@ -97,6 +100,7 @@ public class ToshiManager {
         if (this.wallet != null && this.areManagersInitialised) {
             return Completable.complete();
         }
+        markInitStarted();
         return new HDWallet()
                 .getExistingWallet()
                 .doOnSuccess(this::setWallet)
@@ -105,53 +109,87 @@ public class ToshiManager {
                 .subscribeOn(Schedulers.from(this.singleExecutor));
     }
 
+    private void markInitStarted() {
+        this.initStartedAt = SystemClock.elapsedRealtime();
+        this.walletStage.markStarted();
+    }
+
+    // Traces the critical path of a launch, from the start of init to the database being usable
+    private void logSinceInitStarted(final String event) {
+        LogUtil.d(getClass(), event + " " + (SystemClock.elapsedRealtime() - this.initStartedAt) + "ms after init started");
+    }
+
     private void setWallet(final HDWallet wallet) {
         this.wallet = wallet;
-        this.walletSubject.onNext(wallet);
+        if (wallet == null) {
+            this.walletStage.reset();
+        } else {
+            this.walletStage.markReady(wallet);
+            logSinceInitStarted("Wallet ready");
+        }
     }
 
+    // Startup is a small dependency graph rather than a chain. Only the wallet is
+    // needed to open Realm and to start the balance manager, and everything else
+    // is waiting on Realm, so the independent branches are started side by side.
     private Completable initManagers() {
         if (this.areManagersInitialised) return Completable.complete();
-        return Completable.fromAction(() -> {
-            initRealm();
-            this.transactionManager.init(this.wallet);
-            this.userManager.init(this.wallet);
+        final long startTime = SystemClock.elapsedRealtime();
+        final Completable realmDependants = Completable
+                .fromAction(this::initRealm)
+                .andThen(Completable.mergeDelayError(
+                        Completable.fromAction(() -> this.transactionManager.init(this.wallet))
+                                .subscribeOn(Schedulers.io()),
+                        Completable.fromAction(() -> this.userManager.init(this.wallet))
+                                .subscribeOn(Schedulers.io()),
+                        Completable.defer(() -> this.sofaMessageManager.init(this.wallet))
+                                .subscribeOn(Schedulers.io())
+                ));
+
+        return Completable.mergeDelayError(
+                realmDependants,
+                Completable.defer(() -> this.balanceManager.init(this.wallet))
+                        .subscribeOn(Schedulers.io())
+        )
+        .doOnCompleted(() -> {
             this.reputationManager = new ReputationManager();
-        })
-        .andThen(Completable.mergeDelayError(
-                this.balanceManager.init(this.wallet),
-                this.sofaMessageManager.init(this.wallet)
-        ))
-        .doOnCompleted(() -> this.areManagersInitialised = true);
+            this.areManagersInitialised = true;
+            LogUtil.d(getClass(), "Managers initialised in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+        });
     }
 
     private void initRealm() {
-        if (this.realmConfig != null) return;
+        if (this.realmStage.isReady()) return;
+        this.realmStage.markStarted();
 
         final byte[] key = this.wallet.generateDatabaseEncryptionKey();
         Realm.init(BaseApplication.get());
-        this.realmConfig = new RealmConfiguration
+        final RealmConfiguration realmConfig = new RealmConfiguration
                 .Builder()
-                .schemaVersion(17)
+                .schemaVersion(19)
                 .migration(new DbMigration(this.wallet))
                 .name(this.wallet.getOwnerAddress())
                 .encryptionKey(key)
                 .build();
-        Realm.setDefaultConfiguration(this.realmConfig);
+        Realm.setDefaultConfiguration(realmConfig);
+        this.realmStage.markReady(realmConfig);
+        logSinceInitStarted("Realm ready");
     }
 
+    // The Realm instance is opened on the subscribing thread, which is the thread it must be used on.
     public final Single<Realm> getRealm() {
-        return Single.fromCallable(() -> {
-            while (this.realmConfig == null) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            return Realm.getDefaultInstance();
-        });
+        return Single.fromCallable(this::openRealm);
+    }
 
+    // Blocks until the database has been configured.
+    public final Realm openRealm() {
+        try {
+            this.realmStage.awaitBlocking();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return Realm.getDefaultInstance();
     }
 
     public final SofaMessageManager getSofaMessageManager() {
@@ -183,13 +221,10 @@ public class ToshiManager {
     }
 
     public Single<HDWallet> getWallet() {
-        return
-                this.walletSubject
-                .filter(wallet -> wallet != null)
+        return this.walletStage
+                .await()
                 .doOnError(t -> LogUtil.exception(getClass(), "Wallet is null", t))
-                .onErrorReturn(__ -> null)
-                .first()
-                .toSingle();
+                .onErrorReturn(__ -> null);
     }
 
     public void clearUserData() {
@@ -209,7 +244,7 @@ public class ToshiManager {
     }
 
     private void closeDatabase() {
-        this.realmConfig = null;
+        this.realmStage.reset();
         Realm.removeDefaultConfiguration();
     }
 }
@@ -17,7 +17,6 @@
 
 package com.toshi.manager;
 
-import android.support.annotation.NonNull;
 import android.util.Pair;
 
 import com.toshi.R;
@@ -25,6 +24,7 @@ import com.toshi.crypto.HDWallet;
 import com.toshi.exception.UnknownTransactionException;
 import com.toshi.manager.model.PaymentTask;
 import com.toshi.manager.network.EthereumService;
+import com.toshi.manager.network.ServerClock;
 import com.toshi.manager.store.PendingTransactionStore;
 import com.toshi.model.local.PendingTransaction;
 import com.toshi.model.local.Recipient;
@@ -53,7 +53,6 @@ import java.io.IOException;
 
 import okhttp3.ResponseBody;
 import retrofit2.HttpException;
-import rx.Observable;
 import rx.Single;
 import rx.Subscription;
 import rx.schedulers.Schedulers;
@@ -64,6 +63,7 @@ import static com.toshi.manager.model.PaymentTask.INCOMING;
 import static com.toshi.manager.model.PaymentTask.OUTGOING;
 import static com.toshi.manager.model.PaymentTask.OUTGOING_EXTERNAL;
 import static com.toshi.manager.model.PaymentTask.OUTGOING_RESEND;
+import static java.net.HttpURLConnection.HTTP_CLIENT_TIMEOUT;
 
 public class TransactionManager {
 
@@ -73,6 +73,8 @@ public class TransactionManager {
 
     private HDWallet wallet;
     private PendingTransactionStore pendingTransactionStore;
+    private PendingTransactionTracker pendingTransactionTracker;
+    private LocalTransactionBuilder transactionBuilder;
     private CompositeSubscription subscriptions;
     private Subscription outgoingPaymentSub;
     private Subscription incomingPaymentSub;
@@ -85,6 +87,8 @@ public class TransactionManager {
 
     private void initDatabase() {
         this.pendingTransactionStore = new PendingTransactionStore();
+        this.pendingTransactionTracker = new PendingTransactionTracker(this::updatePayment);
+        this.transactionBuilder = new LocalTransactionBuilder();
     }
 
     private void initSubscriptions() {
@@ -203,6 +207,9 @@ public class TransactionManager {
     }
 
     private void processUpdatedPayment(final Payment payment) {
+        if (SofaType.FAILED.equals(payment.getStatus())) {
+            this.transactionBuilder.invalidate(payment.getFromAddress());
+        }
         this.pendingTransactionStore
                 .loadTransaction(payment.getTxHash())
                 .subscribeOn(Schedulers.io())
@@ -271,43 +278,16 @@ public class TransactionManager {
 
     private void updatePendingTransactions() {
         final Subscription sub = this.pendingTransactionStore
-                .loadAllTransactions()
-                .filter(this::isUnconfirmed)
-                .flatMap(pendingTransaction -> Observable.zip(
-                        Observable.just(pendingTransaction),
-                        getTransactionStatus(pendingTransaction),
-                        Pair::new
-                ))
+                .loadUnconfirmedTransactions()
                 .subscribeOn(Schedulers.io())
-                .observeOn(Schedulers.io())
-                .onErrorReturn(__ -> new Pair<>(null, null))
                 .subscribe(
-                        pair -> this.updatePendingTransaction(pair.first, pair.second),
+                        this.pendingTransactionTracker::trackAll,
                         this::handlePendingTransactionError
                 );
 
         this.subscriptions.add(sub);
     }
 
-    @NonNull
-    private Observable<Payment> getTransactionStatus(final PendingTransaction pendingTransaction) {
-        return BaseApplication
-                .get()
-                .getBalanceManager()
-                .getTransactionStatus(pendingTransaction.getTxHash())
-                .toObservable();
-    }
-
-    private Boolean isUnconfirmed(final PendingTransaction pendingTransaction) {
-        try {
-            final SofaMessage sofaMessage = pendingTransaction.getSofaMessage();
-            final Payment payment = SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
-            return payment.getStatus().equals(SofaType.UNCONFIRMED);
-        } catch (final IOException ex) {
-            return false;
-        }
-    }
-
     public void sendExternalPayment(final String paymentAddress, final String amount) {
         new Payment()
                 .setToAddress(paymentAddress)
@@ -324,8 +304,9 @@ public class TransactionManager {
         final PendingTransaction pendingTransaction =
                 new PendingTransaction()
                         .setTxHash(payment.getTxHash())
-                        .setSofaMessage(storedSofaMessage);
-        this.pendingTransactionStore.save(pendingTransaction);
+                        .setSofaMessage(storedSofaMessage)
+                        .setStatus(payment.getStatus());
+        savePendingTransaction(pendingTransaction);
     }
 
     public void addIncomingPayment(final Payment payment) {
@@ -380,8 +361,7 @@ public class TransactionManager {
     }
 
     private void handleOutgoingPayment(final User receiver, final Payment payment, final SofaMessage storedSofaMessage) {
-        createUnsignedTransaction(payment)
-                .flatMap(this::signAndSendTransaction)
+        sendPaymentTransaction(payment)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
                 .subscribe(
@@ -449,8 +429,7 @@ public class TransactionManager {
     }
 
     private void handleOutgoingExternalPayment(final Payment payment, final SofaMessage sofaMessage) {
-        createUnsignedTransaction(payment)
-                .flatMap(this::signAndSendTransaction)
+        sendPaymentTransaction(payment)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
                 .subscribe(
@@ -478,6 +457,38 @@ public class TransactionManager {
                 .flatMap(this::signTransaction);
     }
 
+    // Builds the transaction locally when possible, so the payment only needs the call that
+    // submits it. Falls back to the server skeleton when the builder is missing something,
+    // or when the server rejects the local transaction. Network and server errors aren't
+    // retried as the local transaction may already have been broadcast.
+    private Single<SentTransaction> sendPaymentTransaction(final Payment payment) {
+        final UnsignedTransaction localTransaction = this.transactionBuilder.build(payment);
+        if (localTransaction == null) return sendPaymentTransactionFromSkeleton(payment);
+
+        return signAndSendTransaction(localTransaction)
+                .onErrorResumeNext(error -> {
+                    this.transactionBuilder.invalidate(payment.getFromAddress());
+                    if (!isRejectedTransaction(error)) return Single.error(error);
+                    LogUtil.i(getClass(), "Local transaction rejected, retrying with a server skeleton. " + error);
+                    return sendPaymentTransactionFromSkeleton(payment);
+                });
+    }
+
+    // A client error means the transaction was refused before it was broadcast, e.g. for a
+    // stale nonce or a too low gas price. A timeout or a 5xx doesn't tell us whether it was.
+    private static boolean isRejectedTransaction(final Throwable error) {
+        if (!(error instanceof HttpException)) return false;
+        final int code = ((HttpException) error).code();
+        return code >= 400 && code < 500 && code != HTTP_CLIENT_TIMEOUT;
+    }
+
+    private Single<SentTransaction> sendPaymentTransactionFromSkeleton(final Payment payment) {
+        return createUnsignedTransaction(payment)
+                .doOnSuccess(skeleton -> this.transactionBuilder.learnFrom(payment, skeleton))
+                .flatMap(this::signAndSendTransaction)
+                .doOnError(__ -> this.transactionBuilder.invalidate(payment.getFromAddress()));
+    }
+
     private Single<UnsignedTransaction> createUnsignedTransaction(final Payment payment) {
         final TransactionRequest transactionRequest = generateTransactionRequest(payment);
         return EthereumService
@@ -511,9 +522,9 @@ public class TransactionManager {
     }
 
     private Single<ServerTime> getServerTime() {
-        return EthereumService
-                .getApi()
-                .getTimestamp();
+        return ServerClock
+                .get()
+                .getTime();
     }
 
     private Single<SignedTransaction> signTransaction(final UnsignedTransaction unsignedTransaction) {
@@ -567,8 +578,14 @@ public class TransactionManager {
     private void storeUnconfirmedTransaction(final String txHash, final SofaMessage message) {
         final PendingTransaction pendingTransaction = new PendingTransaction()
                                                             .setSofaMessage(message)
-                                                            .setTxHash(txHash);
+                                                            .setTxHash(txHash)
+                                                            .setStatus(SofaType.UNCONFIRMED);
+        savePendingTransaction(pendingTransaction);
+    }
+
+    private void savePendingTransaction(final PendingTransaction pendingTransaction) {
         this.pendingTransactionStore.save(pendingTransaction);
+        this.pendingTransactionTracker.track(pendingTransaction);
     }
 
     // Returns false if this is a new transaction that the app is unaware of.
@@ -578,6 +595,11 @@ public class TransactionManager {
             return false;
         }
 
+        if (updatedPayment.getStatus().equals(pendingTransaction.getStatus())) {
+            // Nothing changed, avoid rewriting the message and notifying observers
+            return true;
+        }
+
         final SofaMessage updatedMessage;
         try {
             updatedMessage = updateStatusFromPendingTransaction(pendingTransaction, updatedPayment);
@@ -588,9 +610,11 @@ public class TransactionManager {
 
         final PendingTransaction updatedPendingTransaction = new PendingTransaction()
                 .setTxHash(pendingTransaction.getTxHash())
-                .setSofaMessage(updatedMessage);
+                .setSofaMessage(updatedMessage)
+                .setStatus(updatedPayment.getStatus())
+                .setCreatedTime(pendingTransaction.getCreatedTime());
 
-        this.pendingTransactionStore.save(updatedPendingTransaction);
+        savePendingTransaction(updatedPendingTransaction);
         return true;
     }
 
@@ -628,6 +652,8 @@ public class TransactionManager {
 
     public void clear() {
         clearSubscriptions();
+        this.pendingTransactionTracker.stop();
+        this.transactionBuilder.clear();
         this.subscriptions.clear();
     }
 
@@ -23,6 +23,7 @@ import android.content.SharedPreferences;
 
 import com.toshi.crypto.HDWallet;
 import com.toshi.manager.network.IdService;
+import com.toshi.manager.network.ServerClock;
 import com.toshi.model.local.User;
 import com.toshi.model.network.ServerTime;
 import com.toshi.model.network.UserDetails;
@@ -54,11 +55,14 @@ public class UserManager {
 
 
     private final BehaviorSubject<User> userSubject = BehaviorSubject.create();
+    private final StartupStage<HDWallet> walletStage;
+    private final StartupStage<User> currentUserStage = new StartupStage<>("Current user");
     private SharedPreferences prefs;
     private HDWallet wallet;
     private Subscription connectivitySub;
 
-    /* package */ UserManager() {
+    /* package */ UserManager(final StartupStage<HDWallet> walletStage) {
+        this.walletStage = walletStage;
         this.userSubject.onNext(null);
     }
 
@@ -75,16 +79,23 @@ public class UserManager {
                 .onErrorReturn(null);
     }
 
+    // Waits until the current user has been loaded, then emits the latest one
+    public final Single<User> awaitCurrentUser() {
+        return this.currentUserStage
+                .await()
+                .flatMap(__ -> getCurrentUser());
+    }
+
     public UserManager init(final HDWallet wallet) {
         this.wallet = wallet;
-        this.prefs = BaseApplication.get().getSharedPreferences(FileNames.USER_PREFS, Context.MODE_PRIVATE);
+        this.currentUserStage.markStarted();
         attachConnectivityListener();
         initCurrentUser();
         return this;
     }
 
     private void initCurrentUser() {
-        final String toshiId = this.prefs.getString(USER_ID, null);
+        final String toshiId = getPrefs().getString(USER_ID, null);
         BaseApplication
                 .get()
                 .getRecipientManager()
@@ -122,15 +133,15 @@ public class UserManager {
     }
 
     private boolean userNeedsToRegister() {
-        final String oldUserId = this.prefs.getString(OLD_USER_ID, null);
-        final String newUserId = this.prefs.getString(USER_ID, null);
+        final String oldUserId = getPrefs().getString(OLD_USER_ID, null);
+        final String newUserId = getPrefs().getString(USER_ID, null);
         final String expectedAddress = this.wallet.getOwnerAddress();
         final String userId = newUserId == null ? oldUserId : newUserId;
         return userId == null || !userId.equals(expectedAddress);
     }
 
     private boolean userNeedsToMigrate() {
-        final String userId = this.prefs.getString(USER_ID, null);
+        final String userId = getPrefs().getString(USER_ID, null);
         final String expectedAddress = this.wallet.getOwnerAddress();
         return userId == null || !userId.equals(expectedAddress);
     }
@@ -182,13 +193,9 @@ public class UserManager {
     }
 
     private Single<HDWallet> getWallet() {
-        return Single.fromCallable(() -> {
-            while (this.wallet == null) {
-                Thread.sleep(200);
-            }
-            return this.wallet;
-        })
-        .subscribeOn(Schedulers.io());
+        return this.walletStage
+                .await()
+                .observeOn(Schedulers.io());
     }
 
     public Observable<User> getCurrentUserObservable() {
@@ -197,11 +204,20 @@ public class UserManager {
     }
 
     private void updateCurrentUser(final User user) {
-        this.prefs.edit()
+        getPrefs().edit()
             .putString(USER_ID, user.getToshiId())
             .apply();
 
         this.userSubject.onNext(user);
+        if (!this.currentUserStage.isReady()) this.currentUserStage.markReady(user);
+    }
+
+    // The wallet stage can be ready before init has run, so the prefs are opened on first use
+    private SharedPreferences getPrefs() {
+        if (this.prefs == null) {
+            this.prefs = BaseApplication.get().getSharedPreferences(FileNames.USER_PREFS, Context.MODE_PRIVATE);
+        }
+        return this.prefs;
     }
 
     private void migrateUser() {
@@ -254,9 +270,9 @@ public class UserManager {
     }
 
     private Single<ServerTime> getTimestamp() {
-        return IdService
-                .getApi()
-                .getTimestamp();
+        return ServerClock
+                .get()
+                .getTime();
     }
 
     public Single<List<User>> getTopRatedPublicUsers(final int limit) {
@@ -293,8 +309,9 @@ public class UserManager {
     }
 
     public void clear() {
+        this.currentUserStage.reset();
         clearSubscriptions();
-        this.prefs
+        getPrefs()
                 .edit()
                 .putString(USER_ID, null)
                 .apply();
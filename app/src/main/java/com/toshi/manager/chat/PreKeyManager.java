@@ -0,0 +1,127 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.chat;
+
+
+import com.toshi.crypto.signal.ChatService;
+import com.toshi.crypto.signal.SignalPreferences;
+import com.toshi.crypto.signal.store.ProtocolStore;
+import com.toshi.util.LogUtil;
+
+import org.whispersystems.libsignal.InvalidKeyException;
+import org.whispersystems.libsignal.InvalidKeyIdException;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Completable;
+import rx.schedulers.Schedulers;
+
+// Keeps the server stocked with one-time pre-keys and rotates the signed pre-key.
+// The server count is only fetched now and then; in between, the count is estimated
+// from the pre-keys used up by incoming sessions.
+public class PreKeyManager {
+
+    private static final int MINIMUM_PREKEYS = 10;
+    private static final long COUNT_CHECK_INTERVAL = TimeUnit.HOURS.toMillis(6);
+    private static final long SIGNED_PREKEY_ROTATION_AGE = TimeUnit.DAYS.toMillis(2);
+    private static final long SIGNED_PREKEY_ARCHIVE_AGE = TimeUnit.DAYS.toMillis(30);
+
+    private final ChatService chatService;
+    private final ProtocolStore protocolStore;
+    private final AtomicBoolean isRefreshing;
+    private volatile int estimatedPreKeyCount = -1;
+    private volatile long lastCountCheck = 0;
+
+    public PreKeyManager(final ChatService chatService, final ProtocolStore protocolStore) {
+        this.chatService = chatService;
+        this.protocolStore = protocolStore;
+        this.isRefreshing = new AtomicBoolean(false);
+        this.protocolStore.setOnPreKeyRemovedListener(this::handlePreKeyUsed);
+    }
+
+    public void refreshInBackground() {
+        if (!SignalPreferences.getRegisteredWithServer()) return;
+        if (!this.isRefreshing.compareAndSet(false, true)) return;
+
+        Completable
+                .fromAction(this::refresh)
+                .subscribeOn(Schedulers.io())
+                .doAfterTerminate(() -> this.isRefreshing.set(false))
+                .subscribe(
+                        () -> {},
+                        throwable -> LogUtil.exception(getClass(), "Error while refreshing pre-keys", throwable)
+                );
+    }
+
+    private void handlePreKeyUsed() {
+        final int estimate = this.estimatedPreKeyCount;
+        if (estimate < 0) return;
+        this.estimatedPreKeyCount = Math.max(0, estimate - 1);
+        if (this.estimatedPreKeyCount >= MINIMUM_PREKEYS) return;
+        this.lastCountCheck = 0;
+        refreshInBackground();
+    }
+
+    private void refresh() {
+        try {
+            replenishPreKeysIfNeeded();
+            rotateSignedPreKeyIfNeeded();
+        } catch (final IOException | InvalidKeyException | InvalidKeyIdException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void replenishPreKeysIfNeeded() throws IOException, InvalidKeyException, InvalidKeyIdException {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastCountCheck < COUNT_CHECK_INTERVAL) return;
+
+        final int count = this.chatService.getPreKeysCount();
+        this.lastCountCheck = now;
+        this.estimatedPreKeyCount = count;
+        if (count >= MINIMUM_PREKEYS) return;
+
+        final List<PreKeyRecord> preKeys = this.protocolStore.generatePreKeys();
+        this.chatService.setPreKeys(
+                this.protocolStore.getIdentityKeyPair().getPublicKey(),
+                this.protocolStore.getLastResortKey(),
+                this.protocolStore.getSignedPreKey(),
+                preKeys);
+        // The upload replaces whatever one-time pre-keys the server had left
+        this.estimatedPreKeyCount = preKeys.size();
+        LogUtil.d(getClass(), "Uploaded " + preKeys.size() + " pre-keys, " + count + " were left");
+    }
+
+    private void rotateSignedPreKeyIfNeeded() throws InvalidKeyException, InvalidKeyIdException, IOException {
+        final SignedPreKeyRecord current = this.protocolStore.getSignedPreKey();
+        if (System.currentTimeMillis() - current.getTimestamp() < SIGNED_PREKEY_ROTATION_AGE) return;
+
+        final SignedPreKeyRecord next = this.protocolStore.generateNextSignedPreKey();
+        this.chatService.setSignedPreKey(next);
+        this.protocolStore.setActiveSignedPreKey(next);
+        this.protocolStore.pruneSignedPreKeys(SIGNED_PREKEY_ARCHIVE_AGE);
+    }
+
+    public void clear() {
+        this.protocolStore.setOnPreKeyRemovedListener(null);
+    }
+}
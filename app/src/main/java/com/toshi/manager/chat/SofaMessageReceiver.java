@@ -37,10 +37,12 @@ import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
 import com.toshi.model.sofa.SofaType;
 import com.toshi.util.FileUtil;
+import com.toshi.util.KeyedSerialExecutor;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 import com.toshi.view.notification.ChatNotificationManager;
 
+import org.spongycastle.util.encoders.Hex;
 import org.whispersystems.libsignal.DuplicateMessageException;
 import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.InvalidKeyIdException;
@@ -65,23 +67,52 @@ import org.whispersystems.signalservice.internal.configuration.SignalServiceUrl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import rx.Single;
+import rx.functions.Action1;
 
 public class SofaMessageReceiver {
 
     private final static String USER_AGENT = "Android " + BuildConfig.APPLICATION_ID + " - " + BuildConfig.VERSION_NAME +  ":" + BuildConfig.VERSION_CODE;
+    private final static int MESSAGE_PROCESSING_THREADS = 4;
+    private final static int ATTACHMENT_DOWNLOAD_THREADS = 2;
+    private final static int MAX_QUEUED_ATTACHMENTS = 16;
+    private final static long QUEUE_DEPTH_LOG_INTERVAL_MS = 5000;
+    private final static int IDLE_THREAD_TIMEOUT_SECONDS = 30;
+    private final static long READ_TIMEOUT_MS = 10000;
+    // A push means a message is waiting, so allow time for the pipe to connect.
+    private final static long FIRST_DRAINED_MESSAGE_TIMEOUT_MS = 5000;
 
     private final ConversationStore conversationStore;
+    // Decryption happens serially on the reading thread, because Signal sessions must see
+    // envelopes in order. Everything after that runs here, serially per conversation.
+    private final KeyedSerialExecutor incomingMessageExecutor;
+    private final ThreadPoolExecutor messageProcessingPool;
+    private final ThreadPoolExecutor attachmentExecutor;
     private final ProtocolStore protocolStore;
     private final SignalServiceMessageReceiver messageReceiver;
     private final HDWallet wallet;
 
-    private SignalServiceMessagePipe messagePipe;
-    private boolean isReceivingMessages;
+    // Only one thread reads from the pipe at a time, either the receiving loop or a drain
+    private final ReentrantLock pipeLock = new ReentrantLock();
+    private final AtomicBoolean isReceivingMessages = new AtomicBoolean(false);
+    private volatile SignalServiceMessagePipe messagePipe;
+    private volatile long lastQueueDepthLogAt;
 
     public SofaMessageReceiver(@NonNull final HDWallet wallet,
                                @NonNull final ProtocolStore protocolStore,
@@ -90,6 +121,15 @@ public class SofaMessageReceiver {
         this.wallet = wallet;
         this.protocolStore = protocolStore;
         this.conversationStore = conversationStore;
+        // Holds at most one queued task per conversation, the rest wait in the KeyedSerialExecutor
+        this.messageProcessingPool = createBoundedPool(MESSAGE_PROCESSING_THREADS, new LinkedBlockingQueue<>());
+        this.incomingMessageExecutor = new KeyedSerialExecutor(this.messageProcessingPool);
+        // When full the message processing thread downloads the attachment itself, which slows
+        // down processing instead of queueing up downloads without limit
+        this.attachmentExecutor = createBoundedPool(
+                ATTACHMENT_DOWNLOAD_THREADS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_ATTACHMENTS));
+        this.attachmentExecutor.setRejectedExecutionHandler(SofaMessageReceiver::runInCaller);
 
         this.messageReceiver =
                 new SignalServiceMessageReceiver(
@@ -100,18 +140,34 @@ public class SofaMessageReceiver {
                         USER_AGENT);
     }
 
+    private static ThreadPoolExecutor createBoundedPool(final int threads, final BlockingQueue<Runnable> queue) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                IDLE_THREAD_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS,
+                queue);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Like CallerRunsPolicy, but throws once the executor is shut down instead of silently
+    // discarding the task, which would leave the caller waiting on its Future forever.
+    private static void runInCaller(final Runnable task, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) throw new RejectedExecutionException("Attachment executor has been shut down");
+        task.run();
+    }
+
     public void receiveMessagesAsync() {
-        if (this.isReceivingMessages) {
+        if (!this.isReceivingMessages.compareAndSet(false, true)) {
             // Already running.
             return;
         }
 
-        this.isReceivingMessages = true;
         new Thread(() -> {
-            while (isReceivingMessages) {
+            while (this.isReceivingMessages.get()) {
                 try {
-                    final SofaMessage sofaMessage = fetchLatestMessage();
-                    ChatNotificationManager.showNotification(sofaMessage);
+                    receiveNextMessage(READ_TIMEOUT_MS, ChatNotificationManager::showNotification);
                 } catch (TimeoutException e) {
                     // Nop -- this is expected to happen
                 }
@@ -119,49 +175,159 @@ public class SofaMessageReceiver {
         }).start();
     }
 
-    public SofaMessage fetchLatestMessage() throws TimeoutException {
-        if (this.messagePipe == null) {
-            this.messagePipe = messageReceiver.createMessagePipe();
+    // Reads every queued envelope until the pipe has been idle for idleTimeoutMs, then waits
+    // for them to be processed. Stops reading and waiting once budgetMs has passed.
+    // Returns the messages that were stored, in the order they finished processing.
+    public List<SofaMessage> drainPendingMessages(final long budgetMs, final long idleTimeoutMs) {
+        final List<SofaMessage> processedMessages = Collections.synchronizedList(new ArrayList<>());
+        if (this.isReceivingMessages.get()) {
+            // The receiving loop is already reading from the pipe and notifies for what it reads
+            return processedMessages;
+        }
+
+        final long deadline = System.currentTimeMillis() + budgetMs;
+        final Semaphore processedCount = new Semaphore(0);
+        final Action1<SofaMessage> onProcessed = sofaMessage -> {
+            if (sofaMessage != null) processedMessages.add(sofaMessage);
+            processedCount.release();
+        };
+
+        int dispatchedCount = 0;
+        long readTimeoutMs = FIRST_DRAINED_MESSAGE_TIMEOUT_MS;
+        long remainingMs = budgetMs;
+        while (remainingMs > 0) {
+            // The receiving loop may have started since, it takes over reading from here
+            if (this.isReceivingMessages.get()) break;
+            try {
+                receiveNextMessage(Math.min(readTimeoutMs, remainingMs), onProcessed);
+                dispatchedCount++;
+            } catch (final TimeoutException ex) {
+                break;
+            }
+            readTimeoutMs = idleTimeoutMs;
+            remainingMs = deadline - System.currentTimeMillis();
+        }
+
+        try {
+            final long waitMs = Math.max(0, deadline - System.currentTimeMillis());
+            if (!processedCount.tryAcquire(dispatchedCount, waitMs, TimeUnit.MILLISECONDS)) {
+                LogUtil.w(getClass(), "Drain budget used up with " + getPendingMessageCount() + " messages still processing");
+            }
+        } catch (final InterruptedException ex) {
+            LogUtil.w(getClass(), "Interrupted while waiting for drained messages. " + ex);
+        }
+
+        LogUtil.d(getClass(), "Drained " + dispatchedCount + " messages in " + (budgetMs - Math.max(0, deadline - System.currentTimeMillis())) + "ms");
+        synchronized (processedMessages) {
+            return new ArrayList<>(processedMessages);
+        }
+    }
+
+    // Returns once the envelope has been decrypted; onProcessed is called
+    // when the message has been stored, or with null if it was dropped.
+    // Throws a TimeoutException if another thread keeps the pipe busy for readTimeoutMs.
+    private void receiveNextMessage(final long readTimeoutMs, final Action1<SofaMessage> onProcessed) throws TimeoutException {
+        lockPipe(readTimeoutMs);
+        try {
+            readNextMessage(readTimeoutMs, onProcessed);
+        } finally {
+            this.pipeLock.unlock();
         }
+    }
 
+    private void lockPipe(final long timeoutMs) throws TimeoutException {
         try {
-            final SignalServiceEnvelope envelope = messagePipe.read(10, TimeUnit.SECONDS);
-            return decryptIncomingSignalServiceEnvelope(envelope);
+            if (this.pipeLock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) return;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        throw new TimeoutException("The pipe is being read by another thread");
+    }
+
+    // Must hold pipeLock
+    private void readNextMessage(final long readTimeoutMs, final Action1<SofaMessage> onProcessed) throws TimeoutException {
+        SignalServiceMessagePipe pipe = this.messagePipe;
+        if (pipe == null) {
+            pipe = messageReceiver.createMessagePipe();
+            this.messagePipe = pipe;
+        }
+
+        try {
+            final SignalServiceEnvelope envelope = pipe.read(readTimeoutMs, TimeUnit.MILLISECONDS);
+            final SignalServiceContent content = decryptIncomingSignalServiceEnvelope(envelope);
+            dispatchIncomingContent(envelope.getSource(), content, onProcessed);
+            return;
         } catch (final TimeoutException ex) {
             throw new TimeoutException(ex.getMessage());
         } catch (final IllegalStateException | InvalidKeyException | InvalidKeyIdException | DuplicateMessageException | InvalidVersionException | LegacyMessageException | InvalidMessageException | NoSessionException | org.whispersystems.libsignal.UntrustedIdentityException | IOException e) {
             LogUtil.exception(getClass(), "Error while fetching latest message", e);
         }
-        return null;
+        onProcessed.call(null);
     }
 
-    private SofaMessage decryptIncomingSignalServiceEnvelope(final SignalServiceEnvelope envelope) throws InvalidVersionException, InvalidMessageException, InvalidKeyException, DuplicateMessageException, InvalidKeyIdException, org.whispersystems.libsignal.UntrustedIdentityException, LegacyMessageException, NoSessionException {
+    private SignalServiceContent decryptIncomingSignalServiceEnvelope(final SignalServiceEnvelope envelope) throws InvalidVersionException, InvalidMessageException, InvalidKeyException, DuplicateMessageException, InvalidKeyIdException, org.whispersystems.libsignal.UntrustedIdentityException, LegacyMessageException, NoSessionException {
         // ToDo -- When do we need to create new keys?
  /*       if (envelope.getType() == SignalServiceProtos.Envelope.Type.PREKEY_BUNDLE_VALUE) {
             // New keys need to be registered with the server.
             registerWithServer();
             return;
         }*/
-        return handleIncomingSofaMessage(envelope);
-    }
-
-    private SofaMessage handleIncomingSofaMessage(final SignalServiceEnvelope envelope) throws InvalidVersionException, InvalidMessageException, InvalidKeyException, DuplicateMessageException, InvalidKeyIdException, org.whispersystems.libsignal.UntrustedIdentityException, LegacyMessageException, NoSessionException {
         final SignalServiceAddress localAddress = new SignalServiceAddress(this.wallet.getOwnerAddress());
         final SignalServiceCipher cipher = new SignalServiceCipher(localAddress, this.protocolStore);
-        final SignalServiceContent content = cipher.decrypt(envelope);
-        final String messageSource = envelope.getSource();
+        return cipher.decrypt(envelope);
+    }
+
+    private void dispatchIncomingContent(final String messageSource,
+                                         final SignalServiceContent content,
+                                         final Action1<SofaMessage> onProcessed) {
+        if (!content.getDataMessage().isPresent()) {
+            onProcessed.call(null);
+            return;
+        }
+
+        final SignalServiceDataMessage dataMessage = content.getDataMessage().get();
+        final String threadId = getThreadId(messageSource, dataMessage);
+        this.incomingMessageExecutor.execute(threadId, () -> {
+            SofaMessage sofaMessage = null;
+            try {
+                sofaMessage = handleIncomingSofaMessage(messageSource, dataMessage);
+            } catch (final Exception ex) {
+                LogUtil.exception(getClass(), "Error while processing incoming message", ex);
+            }
+            onProcessed.call(sofaMessage);
+        });
+        logQueueDepth();
+    }
+
+    private String getThreadId(final String messageSource, final SignalServiceDataMessage dataMessage) {
+        final Optional<SignalServiceGroup> signalGroup = dataMessage.getGroupInfo();
+        return signalGroup.isPresent()
+                ? Hex.toHexString(signalGroup.get().getGroupId())
+                : messageSource;
+    }
 
+    private void logQueueDepth() {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastQueueDepthLogAt < QUEUE_DEPTH_LOG_INTERVAL_MS) return;
+        this.lastQueueDepthLogAt = now;
+        LogUtil.d(getClass(), "Incoming queue depth: " + getPendingMessageCount()
+                + " messages in " + this.incomingMessageExecutor.getActiveKeyCount() + " conversations, "
+                + this.attachmentExecutor.getQueue().size() + " attachments waiting");
+    }
+
+    // Number of decrypted messages that are still being processed
+    public int getPendingMessageCount() {
+        return this.incomingMessageExecutor.getPendingTaskCount();
+    }
+
+    private SofaMessage handleIncomingSofaMessage(final String messageSource, final SignalServiceDataMessage dataMessage) {
         if (isUserBlocked(messageSource)) {
             LogUtil.i(getClass(), "A blocked user is trying to send a message");
             return null;
         }
 
-        if (content.getDataMessage().isPresent()) {
-            final SignalServiceDataMessage dataMessage = content.getDataMessage().get();
-            if (dataMessage.isGroupUpdate()) return handleGroupUpdate(dataMessage);
-            else return handleTextMessage(messageSource, dataMessage);
-        }
-        return null;
+        if (dataMessage.isGroupUpdate()) return handleGroupUpdate(dataMessage);
+        else return handleTextMessage(messageSource, dataMessage);
     }
 
     @Nullable
@@ -175,12 +341,16 @@ public class SofaMessageReceiver {
 
     private SofaMessage handleGroupUpdate(final SignalServiceDataMessage dataMessage) {
         final SignalServiceGroup signalGroup = dataMessage.getGroupInfo().get();
-        new Group()
-                .initFromSignalGroup(signalGroup)
-                .subscribe(
-                        this.conversationStore::saveNewGroup,
-                        ex -> LogUtil.e(getClass(), "Error creating incoming group. " + ex)
-                );
+        try {
+            // Blocks so later messages in this group are handled after the update
+            final Group group = new Group()
+                    .initFromSignalGroup(signalGroup)
+                    .toBlocking()
+                    .value();
+            this.conversationStore.saveNewGroup(group);
+        } catch (final Exception ex) {
+            LogUtil.e(getClass(), "Error creating incoming group. " + ex);
+        }
         return null;
     }
 
@@ -199,15 +369,29 @@ public class SofaMessageReceiver {
             return null;
         }
 
-        processAttachments(signalMessage);
+        // The attachment downloads while the sender is being looked up
+        final Future<String> attachmentFilePath = this.attachmentExecutor.submit(() -> processAttachments(signalMessage));
 
+        final User user;
         try {
-            final User user = getUser(signalMessage.getSource());
-            return saveIncomingMessageToDatabase(user, signalMessage);
+            user = getUser(signalMessage.getSource());
         } catch (Exception ex) {
             LogUtil.e(getClass(), "Error fetching user. " + ex);
+            attachmentFilePath.cancel(true);
+            return null;
         }
-        return null;
+
+        try {
+            signalMessage.setAttachmentFilePath(attachmentFilePath.get());
+        } catch (final InterruptedException ex) {
+            // The receiver has been destroyed
+            attachmentFilePath.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException ex) {
+            LogUtil.e(getClass(), "Error saving attachment. " + ex);
+        }
+        return saveIncomingMessageToDatabase(user, signalMessage);
     }
 
     private User getUser(final String toshiId) {
@@ -220,17 +404,17 @@ public class SofaMessageReceiver {
                 .value();
     }
 
-    private void processAttachments(final DecryptedSignalMessage signalMessage) {
+    private @Nullable String processAttachments(final DecryptedSignalMessage signalMessage) {
         if (!signalMessage.getAttachments().isPresent()) {
-            return;
+            return null;
         }
 
         final List<SignalServiceAttachment> attachments = signalMessage.getAttachments().get();
         if (attachments.size() > 0) {
             final SignalServiceAttachment attachment = attachments.get(0);
-            final String filePath = saveAttachmentToFile(attachment.asPointer());
-            signalMessage.setAttachmentFilePath(filePath);
+            return saveAttachmentToFile(attachment.asPointer());
         }
+        return null;
     }
 
     private @Nullable
@@ -246,11 +430,14 @@ public class SofaMessageReceiver {
                 .setAttachmentFilePath(signalMessage.getAttachmentFilePath())
                 .setSendState(SendState.STATE_RECEIVED);
 
-        generateRecipientFromSignalMessage(sender, signalMessage)
-                .subscribe(
-                        senderRecipient -> this.saveIncomingMessageToDatabase(sender, remoteMessage, senderRecipient),
-                        ex -> LogUtil.e(getClass(), "Error saving incoming message to database. " + ex)
-                );
+        try {
+            final Recipient senderRecipient = generateRecipientFromSignalMessage(sender, signalMessage)
+                    .toBlocking()
+                    .value();
+            saveIncomingMessageToDatabase(sender, remoteMessage, senderRecipient);
+        } catch (final Exception ex) {
+            LogUtil.e(getClass(), "Error saving incoming message to database. " + ex);
+        }
 
         return remoteMessage;
     }
@@ -262,12 +449,16 @@ public class SofaMessageReceiver {
             fetchAndCacheIncomingPaymentSender(sender);
             return;
         } else if(remoteMessage.getType() == SofaType.PAYMENT_REQUEST) {
-            generatePayloadWithLocalAmountEmbedded(remoteMessage)
-                    .subscribe((updatedPayload) -> {
-                                remoteMessage.setPayload(updatedPayload);
-                                this.conversationStore.saveNewMessage(senderRecipient, remoteMessage);
-                            },
-                            this::handleError);
+            // Blocks so the request is stored in order with the rest of the conversation
+            try {
+                final String updatedPayload = generatePayloadWithLocalAmountEmbedded(remoteMessage)
+                        .toBlocking()
+                        .value();
+                remoteMessage.setPayload(updatedPayload);
+            } catch (final Exception ex) {
+                handleError(ex);
+            }
+            this.conversationStore.saveNewMessage(senderRecipient, remoteMessage);
             return;
         } else if (remoteMessage.getType() == SofaType.INIT_REQUEST) {
             // Don't render initRequests,
@@ -329,11 +520,24 @@ public class SofaMessageReceiver {
         return Single.just(remoteMessage.getPayloadWithHeaders());
     }
 
+    // Stops receiving and drops every message that hasn't been processed yet,
+    // so nothing is written for a user that has signed out. Can't be undone.
+    public void destroy() {
+        shutdown();
+        this.incomingMessageExecutor.shutdown();
+        this.messageProcessingPool.shutdownNow();
+        this.attachmentExecutor.shutdownNow();
+    }
+
+    // Stops receiving, e.g. when the app goes to the background. Messages already
+    // read are still processed and receiving can be resumed.
     public void shutdown() {
-        this.isReceivingMessages = false;
-        if (this.messagePipe != null) {
-            this.messagePipe.shutdown();
-            this.messagePipe = null;
+        this.isReceivingMessages.set(false);
+        // Not under pipeLock, shutting the pipe down is what unblocks a pending read
+        final SignalServiceMessagePipe pipe = this.messagePipe;
+        this.messagePipe = null;
+        if (pipe != null) {
+            pipe.shutdown();
         }
     }
 }
@@ -67,8 +67,8 @@ public class CurrencyService {
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory
                 .createWithScheduler(Schedulers.io());
         final File cachePath = new File(BaseApplication.get().getCacheDir(), "ratesCache");
-        this.client = new OkHttpClient
-                .Builder()
+        this.client = SharedHttpClient
+                .newBuilder()
                 .cache(new Cache(cachePath, 1024 * 1024))
                 .addNetworkInterceptor(new ReadFromCacheInterceptor())
                 .addInterceptor(new OfflineCacheInterceptor());
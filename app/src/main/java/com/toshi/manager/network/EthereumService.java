@@ -27,7 +27,8 @@ import com.toshi.model.local.Network;
 import com.toshi.model.local.Networks;
 import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.SofaAdapters;
-import com.toshi.model.sofa.SofaMessage;
+
+import java.io.IOException;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -62,7 +63,7 @@ public class EthereumService {
     }
 
     private EthereumService() {
-        this.client = new OkHttpClient.Builder();
+        this.client = SharedHttpClient.newBuilder();
 
         addUserAgentHeader();
         addSigningInterceptor();
@@ -126,19 +127,26 @@ public class EthereumService {
                     .url(url)
                     .build();
 
-            final Response response = new OkHttpClient()
+            final Response response = SharedHttpClient
+                    .get()
                     .newCall(request)
                     .execute();
 
-            if (response.code() == 404) {
-                return null;
+            try {
+                if (response.code() == 404) {
+                    return null;
+                }
+
+                // The body is a SOFA::Payment message, skip the header and parse the payload directly
+                final String sofaPayment = response.body().string();
+                final int payloadStart = sofaPayment.indexOf('{');
+                if (payloadStart == -1) {
+                    throw new IOException("Unexpected transaction status response");
+                }
+                return SofaAdapters.get().paymentFrom(sofaPayment.substring(payloadStart));
+            } finally {
+                response.close();
             }
-
-            final SofaMessage sofaMessage = new SofaMessage()
-                    .makeNew(response.body().string());
-            
-            response.close();
-            return SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
         });
     }
 }
@@ -69,8 +69,8 @@ public class IdService {
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
         final File cachePath = new File(BaseApplication.get().getCacheDir(), "idCache");
         this.cache = new Cache(cachePath, 1024 * 1024 * 2);
-        this.client = new OkHttpClient
-                .Builder()
+        this.client = SharedHttpClient
+                .newBuilder()
                 .cache(this.cache)
                 .addNetworkInterceptor(new ReadFromCacheInterceptor())
                 .addInterceptor(new OfflineCacheInterceptor());
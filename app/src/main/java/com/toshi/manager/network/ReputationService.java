@@ -64,8 +64,8 @@ public class ReputationService {
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory
                 .createWithScheduler(Schedulers.io());
         final File cachePath = new File(BaseApplication.get().getCacheDir(), "repCache");
-        this.client = new OkHttpClient
-                .Builder()
+        this.client = SharedHttpClient
+                .newBuilder()
                 .cache(new Cache(cachePath, 1024 * 1024))
                 .addNetworkInterceptor(new ReadFromCacheInterceptor())
                 .addInterceptor(new OfflineCacheInterceptor());
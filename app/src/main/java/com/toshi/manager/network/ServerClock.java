@@ -0,0 +1,116 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.network;
+
+
+import android.os.SystemClock;
+
+import com.toshi.model.network.ServerTime;
+import com.toshi.util.LogUtil;
+
+import rx.Single;
+
+// Tracks the offset between the local clock and the Toshi servers so that signed
+// requests can be timestamped without asking the server for the time first.
+// The offset is measured against the ID service, whose clock the other services share.
+// It is kept relative to the time since boot so that changing the device clock doesn't break it.
+public class ServerClock {
+
+    private static final long RESYNC_INTERVAL_MS = 30 * 60 * 1000;
+
+    private static ServerClock instance;
+
+    private final Object syncLock = new Object();
+    private volatile long offsetMs;
+    private volatile long lastSyncedAt;
+    private Single<ServerTime> inFlightSync;
+
+    public static ServerClock get() {
+        if (instance == null) {
+            instance = getSync();
+        }
+        return instance;
+    }
+
+    private static synchronized ServerClock getSync() {
+        if (instance == null) {
+            instance = new ServerClock();
+        }
+        return instance;
+    }
+
+    private ServerClock() {}
+
+    public Single<ServerTime> getTime() {
+        return Single.defer(() -> isSynced()
+                ? Single.just(toServerTime(SystemClock.elapsedRealtime()))
+                : sync());
+    }
+
+    // Called when the server rejects the timestamp of a signed request.
+    public void invalidate() {
+        this.lastSyncedAt = 0;
+    }
+
+    private boolean isSynced() {
+        final long lastSyncedAt = this.lastSyncedAt;
+        return lastSyncedAt != 0 && SystemClock.elapsedRealtime() - lastSyncedAt < RESYNC_INTERVAL_MS;
+    }
+
+    private Single<ServerTime> sync() {
+        synchronized (this.syncLock) {
+            if (this.inFlightSync == null) {
+                this.inFlightSync = fetchServerTime()
+                        .toObservable()
+                        .doOnTerminate(this::clearInFlightSync)
+                        .cache()
+                        .toSingle();
+            }
+            return this.inFlightSync;
+        }
+    }
+
+    private Single<ServerTime> fetchServerTime() {
+        return Single.defer(() -> {
+            final long requestedAt = SystemClock.elapsedRealtime();
+            return IdService
+                    .getApi()
+                    .getTimestamp()
+                    .doOnSuccess(serverTime -> updateOffset(serverTime, requestedAt));
+        });
+    }
+
+    private void updateOffset(final ServerTime serverTime, final long requestedAt) {
+        final long receivedAt = SystemClock.elapsedRealtime();
+        // Assume the server read its clock halfway through the round trip
+        final long localMidpoint = requestedAt + (receivedAt - requestedAt) / 2;
+        this.offsetMs = serverTime.get() * 1000 - localMidpoint;
+        this.lastSyncedAt = receivedAt;
+        LogUtil.d(getClass(), "Server clock offset is " + this.offsetMs + "ms");
+    }
+
+    private void clearInFlightSync() {
+        synchronized (this.syncLock) {
+            this.inFlightSync = null;
+        }
+    }
+
+    private ServerTime toServerTime(final long elapsedRealtimeMs) {
+        return new ServerTime((elapsedRealtimeMs + this.offsetMs) / 1000);
+    }
+}
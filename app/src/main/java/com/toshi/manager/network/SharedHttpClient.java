@@ -0,0 +1,76 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.network;
+
+
+import com.toshi.manager.network.interceptor.NetworkMetricsInterceptor;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+// All HTTP clients in the app are derived from one shared client so that they
+// share connections, TLS sessions and dispatcher threads. Services customise
+// their copy through newBuilder(); interceptors and caches added there only
+// apply to that service.
+public class SharedHttpClient {
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MINUTES = 5;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 10;
+
+    private static OkHttpClient instance;
+
+    public static OkHttpClient get() {
+        if (instance == null) {
+            instance = getSync();
+        }
+        return instance;
+    }
+
+    public static OkHttpClient.Builder newBuilder() {
+        return get().newBuilder();
+    }
+
+    private static synchronized OkHttpClient getSync() {
+        if (instance == null) {
+            instance = buildClient();
+        }
+        return instance;
+    }
+
+    private static OkHttpClient buildClient() {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        final NetworkMetricsInterceptor metricsInterceptor = new NetworkMetricsInterceptor();
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(metricsInterceptor)
+                .addNetworkInterceptor(metricsInterceptor.forNetwork())
+                .build();
+    }
+}
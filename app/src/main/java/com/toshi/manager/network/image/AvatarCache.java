@@ -0,0 +1,181 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.network.image;
+
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.toshi.manager.network.SharedHttpClient;
+import com.toshi.manager.network.interceptor.LoggingInterceptor;
+import com.toshi.manager.network.interceptor.UserAgentInterceptor;
+import com.toshi.util.FileNames;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+import rx.Completable;
+import rx.Single;
+import rx.schedulers.Schedulers;
+
+// Decoded avatars live in Glide's memory and result caches, keyed by url and signature.
+// The image bytes live in the OkHttp disk cache, which keeps the validators alongside them.
+// The signature is the ETag, or Last-Modified for servers that don't send one. Without
+// either it changes once per NO_VALIDATOR_SIGNATURE_MS so that a new avatar is still shown.
+// Signatures are persisted so that results cached on disk are found again after a restart.
+// Each url is revalidated with a conditional request at most once per REVALIDATE_AFTER_MS;
+// only a changed signature causes the avatar to be fetched and decoded again.
+public class AvatarCache {
+
+    private static final long REVALIDATE_AFTER_MS = 10 * 60 * 1000;
+    private static final long NO_VALIDATOR_SIGNATURE_MS = 60 * 60 * 1000;
+    private static final int MAX_DISK_CACHE_SIZE = 1024 * 1024 * 10;
+    private static final CacheControl REVALIDATE = new CacheControl.Builder()
+            .maxAge(0, TimeUnit.SECONDS)
+            .build();
+
+    private static AvatarCache instance;
+
+    private final OkHttpClient client;
+    private final ConcurrentHashMap<String, String> signatures;
+    private final ConcurrentHashMap<String, Long> lastValidated;
+    private final SharedPreferences prefs;
+    private final CountDownLatch persistedSignaturesLoaded;
+
+    public static AvatarCache get() {
+        if (instance == null) {
+            instance = getSync();
+        }
+        return instance;
+    }
+
+    private static synchronized AvatarCache getSync() {
+        if (instance == null) {
+            instance = new AvatarCache();
+        }
+        return instance;
+    }
+
+    private AvatarCache() {
+        final File cacheDir = new File(BaseApplication.get().getCacheDir(), "ToshiImageCache");
+        this.client = SharedHttpClient
+                .newBuilder()
+                .cache(new Cache(cacheDir, MAX_DISK_CACHE_SIZE))
+                .addInterceptor(new UserAgentInterceptor())
+                .addInterceptor(new HttpLoggingInterceptor(new LoggingInterceptor()).setLevel(HttpLoggingInterceptor.Level.BODY))
+                .build();
+        this.signatures = new ConcurrentHashMap<>();
+        this.lastValidated = new ConcurrentHashMap<>();
+        this.persistedSignaturesLoaded = new CountDownLatch(1);
+        this.prefs = BaseApplication.get().getSharedPreferences(FileNames.AVATAR_PREFS, Context.MODE_PRIVATE);
+        loadPersistedSignatures();
+    }
+
+    // Read once in the background so that binding an avatar never waits on disk
+    private void loadPersistedSignatures() {
+        Completable.fromAction(() -> {
+            for (final Map.Entry<String, ?> entry : this.prefs.getAll().entrySet()) {
+                if (entry.getValue() instanceof String) this.signatures.putIfAbsent(entry.getKey(), (String) entry.getValue());
+            }
+        })
+        .doAfterTerminate(this.persistedSignaturesLoaded::countDown)
+        .subscribeOn(Schedulers.io())
+        .subscribe(
+                () -> {},
+                throwable -> LogUtil.exception(getClass(), "Error while loading avatar signatures", throwable)
+        );
+    }
+
+    /* package */ OkHttpClient getHttpClient() {
+        return this.client;
+    }
+
+    // Identifies the version of the avatar that is currently cached
+    public String getSignature(final String url) {
+        final String signature = this.signatures.get(url);
+        return signature == null ? "" : signature;
+    }
+
+    // Emits true if the avatar has changed since it was last rendered with getSignature()
+    public Single<Boolean> revalidate(final String url) {
+        if (!needsRevalidation(url)) return Single.just(false);
+        this.lastValidated.put(url, System.currentTimeMillis());
+
+        return Single.fromCallable(() -> {
+            this.persistedSignaturesLoaded.await();
+            final String previousSignature = getSignature(url);
+            final String signature = fetchSignature(url);
+            if (signature == null) return false;
+            this.signatures.put(url, signature);
+            if (signature.equals(previousSignature)) return false;
+            this.prefs.edit().putString(url, signature).apply();
+            return true;
+        })
+        .doOnError(__ -> this.lastValidated.remove(url))
+        .subscribeOn(Schedulers.io());
+    }
+
+    public void expire(final String url) {
+        this.lastValidated.remove(url);
+    }
+
+    public void clear() {
+        this.signatures.clear();
+        this.lastValidated.clear();
+        this.prefs.edit().clear().apply();
+    }
+
+    private boolean needsRevalidation(final String url) {
+        final Long lastValidated = this.lastValidated.get(url);
+        return lastValidated == null || System.currentTimeMillis() - lastValidated > REVALIDATE_AFTER_MS;
+    }
+
+    // A 304 only updates the cached headers; a 200 is read fully so that OkHttp caches the new image
+    private @Nullable String fetchSignature(final String url) throws IOException {
+        final Request request = new Request.Builder()
+                .url(url)
+                .cacheControl(REVALIDATE)
+                .build();
+
+        final Response response = this.client.newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) return null;
+            response.body().bytes();
+            final String etag = response.header("ETag");
+            if (etag != null) return etag;
+            final String lastModified = response.header("Last-Modified");
+            if (lastModified != null) return lastModified;
+            return "t" + System.currentTimeMillis() / NO_VALIDATOR_SIGNATURE_MS;
+        } finally {
+            response.close();
+        }
+    }
+}
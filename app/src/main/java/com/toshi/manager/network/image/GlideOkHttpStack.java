@@ -24,39 +24,20 @@ import com.bumptech.glide.GlideBuilder;
 import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.module.GlideModule;
-import com.toshi.manager.network.interceptor.LoggingInterceptor;
-import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.view.BaseApplication;
 
-import java.io.File;
 import java.io.InputStream;
 
-import okhttp3.Cache;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 public class GlideOkHttpStack implements GlideModule {
 
-    private static final int MAX_SIZE = 1024 * 1024 * 10;
-
     @Override
     public void applyOptions(Context context, GlideBuilder builder) {}
 
     @Override
     public void registerComponents(Context context, Glide glide) {
-        final File cacheDir = new File(BaseApplication.get().getCacheDir(), "ToshiImageCache");
-        final Cache cache = new Cache(cacheDir, MAX_SIZE);
-
-        final OkHttpClient client =
-                new OkHttpClient().newBuilder()
-                .cache(cache)
-                .addInterceptor(new UserAgentInterceptor())
-                .addInterceptor(new HttpLoggingInterceptor(new LoggingInterceptor()).setLevel(HttpLoggingInterceptor.Level.BODY))
-                .build();
-
-
+        final OkHttpClient client = AvatarCache.get().getHttpClient();
         glide.register(CachedGlideUrl.class, InputStream.class, superFactory(new OkHttpUrlLoader.Factory(client), CachedGlideUrl.class));
-        glide.register(ForceLoadGlideUrl.class, InputStream.class, superFactory(new OkHttpUrlLoader.Factory(client), ForceLoadGlideUrl.class));
     }
 
     /**
@@ -0,0 +1,120 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.network.interceptor;
+
+
+import com.toshi.util.LogUtil;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+// Collects per-host request latency, connection reuse and cache hit counts.
+// Added as an application interceptor to see every call, including those
+// answered from the cache, and through forNetwork() as a network interceptor
+// to see which connection each request that hits the network goes out on.
+public class NetworkMetricsInterceptor implements Interceptor {
+
+    private static final int LOG_INTERVAL = 50;
+
+    private final ConcurrentHashMap<String, HostMetrics> metricsByHost = new ConcurrentHashMap<>();
+    private final Set<Connection> seenConnections = Collections.newSetFromMap(new WeakHashMap<>());
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        final String host = chain.request().url().host();
+        final long startTime = System.nanoTime();
+        final Response response = chain.proceed(chain.request());
+        final long durationMs = (System.nanoTime() - startTime) / 1_000_000;
+
+        final boolean isCacheHit = response.networkResponse() == null && response.cacheResponse() != null;
+        getMetrics(host).onRequestCompleted(durationMs, isCacheHit);
+        if (this.totalRequests.incrementAndGet() % LOG_INTERVAL == 0) {
+            logMetrics();
+        }
+        return response;
+    }
+
+    public Interceptor forNetwork() {
+        return chain -> {
+            final Connection connection = chain.connection();
+            if (connection != null) {
+                getMetrics(chain.request().url().host()).onConnectionUsed(isReusedConnection(connection));
+            }
+            return chain.proceed(chain.request());
+        };
+    }
+
+    private boolean isReusedConnection(final Connection connection) {
+        synchronized (this.seenConnections) {
+            return !this.seenConnections.add(connection);
+        }
+    }
+
+    private HostMetrics getMetrics(final String host) {
+        final HostMetrics metrics = this.metricsByHost.get(host);
+        if (metrics != null) return metrics;
+        final HostMetrics newMetrics = new HostMetrics();
+        final HostMetrics existingMetrics = this.metricsByHost.putIfAbsent(host, newMetrics);
+        return existingMetrics != null ? existingMetrics : newMetrics;
+    }
+
+    private void logMetrics() {
+        for (final Map.Entry<String, HostMetrics> entry : this.metricsByHost.entrySet()) {
+            LogUtil.d(getClass(), entry.getKey() + " " + entry.getValue());
+        }
+    }
+
+    private static class HostMetrics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong totalDurationMs = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong connectionsUsed = new AtomicLong();
+        private final AtomicLong connectionsReused = new AtomicLong();
+
+        private void onRequestCompleted(final long durationMs, final boolean isCacheHit) {
+            this.requests.incrementAndGet();
+            this.totalDurationMs.addAndGet(durationMs);
+            if (isCacheHit) this.cacheHits.incrementAndGet();
+        }
+
+        private void onConnectionUsed(final boolean isReused) {
+            this.connectionsUsed.incrementAndGet();
+            if (isReused) this.connectionsReused.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            final long requests = this.requests.get();
+            final long averageMs = requests == 0 ? 0 : this.totalDurationMs.get() / requests;
+            return "requests: " + requests
+                    + ", average latency: " + averageMs + "ms"
+                    + ", cache hits: " + this.cacheHits.get()
+                    + ", reused connections: " + this.connectionsReused.get() + "/" + this.connectionsUsed.get();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import android.util.Base64;
 
 import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.util.HashUtil;
+import com.toshi.manager.network.ServerClock;
 import com.toshi.view.BaseApplication;
 
 import java.io.IOException;
@@ -38,6 +39,8 @@ public class SigningInterceptor implements Interceptor {
     private final String ADDRESS_HEADER = "Toshi-ID-Address";
     private final String SIGNATURE_HEADER = "Toshi-Signature";
     private final String TIMESTAMP_HEADER = "Toshi-Timestamp";
+    private final String INVALID_TIMESTAMP_ERROR = "invalid_timestamp";
+    private final long MAX_ERROR_PEEK_BYTES = 4096;
 
     @Override
     public Response intercept(final Chain chain) throws IOException {
@@ -60,8 +63,7 @@ public class SigningInterceptor implements Interceptor {
         String encodedBody = "";
         if (original.body() != null) {
             original.body().writeTo(buffer);
-            final byte[] body = buffer.readByteArray();
-            final byte[] hashedBody = HashUtil.sha3(body);
+            final byte[] hashedBody = HashUtil.sha3(buffer);
             encodedBody = Base64.encodeToString(hashedBody, Base64.NO_WRAP);
         }
 
@@ -82,7 +84,19 @@ public class SigningInterceptor implements Interceptor {
                 .url(url)
                 .build();
 
-        return chain.proceed(request);
+        final Response response = chain.proceed(request);
+        if (isRejectedTimestamp(response)) {
+            // The timestamp has drifted from the server clock, so re-sync before the next signed request
+            ServerClock.get().invalidate();
+        }
+        return response;
+    }
+
+    // Peeks at the error so that the body is still there for the caller
+    private boolean isRejectedTimestamp(final Response response) throws IOException {
+        if (response.code() != 400) return false;
+        final String body = response.peekBody(MAX_ERROR_PEEK_BYTES).string();
+        return body.contains(INVALID_TIMESTAMP_ERROR);
     }
 
     public HDWallet getWallet() {
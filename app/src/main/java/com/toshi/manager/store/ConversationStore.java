@@ -23,16 +23,24 @@ import android.support.annotation.Nullable;
 import android.util.Pair;
 
 import com.toshi.model.local.Conversation;
+import com.toshi.model.local.ConversationSummary;
 import com.toshi.model.local.Group;
 import com.toshi.model.local.Recipient;
-import com.toshi.model.local.User;
 import com.toshi.model.sofa.SofaMessage;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.realm.Realm;
 import io.realm.RealmQuery;
@@ -41,7 +49,6 @@ import io.realm.Sort;
 import rx.Completable;
 import rx.Observable;
 import rx.Single;
-import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 
 public class ConversationStore {
@@ -49,13 +56,25 @@ public class ConversationStore {
     private static final int FIFTEEN_MINUTES = 1000 * 60 * 15;
     private static final String THREAD_ID_FIELD = "threadId";
     private static final String MESSAGE_ID_FIELD = "privateKey";
+    private static final String NUMBER_OF_UNREAD_FIELD = "numberOfUnread";
+    // Writes queued within this window are committed together in one transaction.
+    private static final long WRITE_BATCH_WINDOW_MS = 50;
+    private static final int MAX_WRITE_BATCH_SIZE = 200;
 
     private static String watchedThreadId;
     private final static PublishSubject<SofaMessage> NEW_MESSAGE_SUBJECT = PublishSubject.create();
     private final static PublishSubject<SofaMessage> UPDATED_MESSAGE_SUBJECT = PublishSubject.create();
     private final static PublishSubject<SofaMessage> DELETED_MESSAGE_SUBJECT = PublishSubject.create();
-    private final static PublishSubject<Conversation> CONVERSATION_CHANGED_SUBJECT = PublishSubject.create();
-    private final static ExecutorService dbThread = Executors.newSingleThreadExecutor();
+    private final static PublishSubject<ConversationSummary> CONVERSATION_CHANGED_SUBJECT = PublishSubject.create();
+    private final static UnreadCounter UNREAD_COUNTER = new UnreadCounter();
+    private final static ScheduledExecutorService dbThread = Executors.newSingleThreadScheduledExecutor();
+    private final static ConcurrentLinkedQueue<ConversationWriteTask> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final static AtomicBoolean isWriteBatchScheduled = new AtomicBoolean(false);
+
+    // Only touched on dbThread
+    private static long committedBatches;
+    private static long committedWrites;
+    private static long totalCommitTimeMs;
 
     // Returns a pair of RxSubjects, the first being the observable for new messages
     // the second being the observable for updated messages.
@@ -78,105 +97,301 @@ public class ConversationStore {
         }
     }
 
-    public Observable<Conversation> getConversationChangedObservable() {
+    public Observable<ConversationSummary> getConversationChangedObservable() {
         return CONVERSATION_CHANGED_SUBJECT
                 .filter(thread -> thread != null);
     }
 
+    // Emits the total number of unread messages, and again whenever it changes.
+    // Only the latest total is delivered to slow subscribers.
+    public Observable<Integer> getUnreadCountObservable() {
+        if (UNREAD_COUNTER.requestSeed()) {
+            // Seeded on dbThread so no write batch can slip in between reading and seeding
+            dbThread.execute(this::seedUnreadCounter);
+        }
+        return UNREAD_COUNTER.asObservable();
+    }
+
+    public void clearUnreadCounter() {
+        UNREAD_COUNTER.clear();
+    }
+
     public void saveNewGroup(@NonNull final Group group) {
-        saveGroup(group)
-                .observeOn(Schedulers.immediate())
-                .subscribeOn(Schedulers.from(dbThread))
-                .subscribe(
-                        this::broadcastConversationChanged,
-                        this::handleError
-                );
+        queueWrite(ConversationWriteTask.forConversation(new Recipient(group)));
     }
 
     public void saveNewMessage(
             @NonNull final Recipient receiver,
             @NonNull final SofaMessage message) {
-        saveMessage(receiver, message)
-        .observeOn(Schedulers.immediate())
-        .subscribeOn(Schedulers.from(dbThread))
-        .subscribe(
-                conversationForBroadcast -> {
-                    broadcastNewChatMessage(receiver.getThreadId(), message);
-                    broadcastConversationChanged(conversationForBroadcast);
-                },
-                this::handleError
-        );
-    }
-
-    private Single<Conversation> saveGroup(@NonNull final Group group) {
-        return Single.fromCallable(() -> {
-            final Conversation conversationToStore = getOrCreateConversation(group);
-            final Realm realm = BaseApplication.get().getRealm();
-            realm.beginTransaction();
-            final Conversation storedConversation = realm.copyToRealmOrUpdate(conversationToStore);
-            realm.commitTransaction();
-            final Conversation conversationForBroadcast = realm.copyFromRealm(storedConversation);
-            realm.close();
+        queueWrite(ConversationWriteTask.forMessage(ConversationWriteTask.SAVE_MESSAGE, receiver, message));
+    }
 
-            return conversationForBroadcast;
-        });
+    public void updateMessage(final Recipient receiver, final SofaMessage message) {
+        queueWrite(ConversationWriteTask.forMessage(ConversationWriteTask.UPDATE_MESSAGE, receiver, message));
     }
 
-    private Single<Conversation> saveMessage(
-            @NonNull final Recipient receiver,
-            @Nullable final SofaMessage message) {
-        return Single.fromCallable(() -> {
-            final Conversation conversationToStore = getOrCreateConversation(receiver);
+    public void deleteMessageById(final Recipient receiver, final SofaMessage message) {
+        queueWrite(ConversationWriteTask.forMessage(ConversationWriteTask.DELETE_MESSAGE, receiver, message));
+    }
 
-            if (message != null && shouldSaveTimestampMessage(message, conversationToStore)) {
-                final SofaMessage timestampMessage =
-                        generateTimestampMessage();
-                conversationToStore.addMessage(timestampMessage);
-                broadcastNewChatMessage(receiver.getThreadId(), timestampMessage);
-            }
+    private void resetUnreadMessageCounter(final String threadId) {
+        queueWrite(ConversationWriteTask.forUnreadReset(threadId));
+    }
 
-            final Realm realm = BaseApplication.get().getRealm();
-            realm.beginTransaction();
+    // Writes are queued and committed in batches on dbThread. The first write
+    // in an empty queue schedules a batch; anything queued before it runs joins it.
+    private void queueWrite(final ConversationWriteTask task) {
+        pendingWrites.add(task);
+        scheduleWriteBatch(WRITE_BATCH_WINDOW_MS);
+    }
+
+    private void scheduleWriteBatch(final long delayMs) {
+        if (!isWriteBatchScheduled.compareAndSet(false, true)) return;
+        dbThread.schedule(this::commitPendingWrites, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void commitPendingWrites() {
+        // Cleared before draining so that writes queued from now on schedule a new batch
+        isWriteBatchScheduled.set(false);
+
+        final List<ConversationWriteTask> batch = new ArrayList<>();
+        ConversationWriteTask task;
+        while (batch.size() < MAX_WRITE_BATCH_SIZE && (task = pendingWrites.poll()) != null) {
+            batch.add(task);
+        }
+
+        if (batch.size() > 0) {
+            commitBatch(batch);
+        }
+
+        if (!pendingWrites.isEmpty()) {
+            scheduleWriteBatch(0);
+        }
+    }
 
-            if (message != null) {
-                final SofaMessage storedMessage = realm.copyToRealmOrUpdate(message);
-                if(conversationToStore.getThreadId().equals(watchedThreadId)) {
-                    conversationToStore.setLatestMessage(storedMessage);
-                } else {
-                    conversationToStore.setLatestMessageAndUpdateUnreadCounter(storedMessage);
+    private void commitBatch(final List<ConversationWriteTask> batch) {
+        final long startTime = System.currentTimeMillis();
+        final Map<String, Integer> latestUpdates = getLatestUpdatePositions(batch);
+        final List<Runnable> messageBroadcasts = new ArrayList<>(batch.size());
+        final Map<String, Conversation> changedConversations = new LinkedHashMap<>();
+        final Realm realm = BaseApplication.get().getRealm();
+        boolean isCommitted = false;
+
+        try {
+            realm.beginTransaction();
+            for (int i = 0; i < batch.size(); i++) {
+                final ConversationWriteTask task = batch.get(i);
+                switch (task.getAction()) {
+                    case ConversationWriteTask.SAVE_MESSAGE:
+                        writeNewMessage(realm, task, messageBroadcasts, changedConversations);
+                        break;
+                    case ConversationWriteTask.UPDATE_MESSAGE: {
+                        // Only the last update to a message in a batch needs to be written
+                        final Integer latestUpdate = latestUpdates.get(task.getSofaMessage().getPrivateKey());
+                        if (latestUpdate != null && latestUpdate == i) {
+                            writeUpdatedMessage(realm, task, messageBroadcasts);
+                        }
+                        break;
+                    }
+                    case ConversationWriteTask.DELETE_MESSAGE:
+                        writeDeletedMessage(realm, task, messageBroadcasts);
+                        break;
+                    case ConversationWriteTask.SAVE_CONVERSATION:
+                        changedConversations.put(task.getThreadId(), getOrCreateConversation(realm, task.getRecipient()));
+                        break;
+                    case ConversationWriteTask.RESET_UNREAD_COUNTER:
+                        writeUnreadCounterReset(realm, task, changedConversations);
+                        break;
                 }
             }
-
-            final Conversation storedConversation = realm.copyToRealmOrUpdate(conversationToStore);
+            // Read inside the transaction, applied once it has been committed
+            final Map<String, Integer> unreadChanges = new HashMap<>(changedConversations.size());
+            for (final Map.Entry<String, Conversation> entry : changedConversations.entrySet()) {
+                if (!entry.getValue().isValid()) continue;
+                unreadChanges.put(entry.getKey(), entry.getValue().getNumberOfUnread());
+            }
             realm.commitTransaction();
-            final Conversation conversationForBroadcast = realm.copyFromRealm(storedConversation);
+            isCommitted = true;
+            UNREAD_COUNTER.update(unreadChanges);
+
+            final List<ConversationSummary> conversationsForBroadcast = new ArrayList<>(changedConversations.size());
+            for (final Conversation storedConversation : changedConversations.values()) {
+                if (!storedConversation.isValid()) continue;
+                conversationsForBroadcast.add(toSummary(realm, storedConversation));
+            }
+
+            for (final Runnable broadcast : messageBroadcasts) {
+                broadcast.run();
+            }
+            for (final ConversationSummary conversation : conversationsForBroadcast) {
+                broadcastConversationChanged(conversation);
+            }
+
+            logBatchCommitted(batch.size(), System.currentTimeMillis() - startTime);
+        } catch (final Exception ex) {
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            handleError(ex);
+            if (!isCommitted && batch.size() > 1) {
+                retryIndividually(batch);
+            }
+        } finally {
             realm.close();
+        }
+    }
 
-            return conversationForBroadcast;
-        });
+    // A single failing write rolls back the whole batch, so each write is retried
+    // in its own transaction to keep one bad write from dropping the others.
+    private void retryIndividually(final List<ConversationWriteTask> batch) {
+        LogUtil.w(getClass(), "Batch of " + batch.size() + " writes failed, retrying them one by one");
+        for (final ConversationWriteTask task : batch) {
+            commitBatch(Collections.singletonList(task));
+        }
     }
 
-    @NonNull
-    private Conversation getOrCreateConversation(final User user) {
-        final Recipient recipient = new Recipient(user);
-        return getOrCreateConversation(recipient);
+    private Map<String, Integer> getLatestUpdatePositions(final List<ConversationWriteTask> batch) {
+        final Map<String, Integer> latestUpdates = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            final ConversationWriteTask task = batch.get(i);
+            if (task.getAction() != ConversationWriteTask.UPDATE_MESSAGE) continue;
+            latestUpdates.put(task.getSofaMessage().getPrivateKey(), i);
+        }
+        return latestUpdates;
     }
 
-    @NonNull
-    private Conversation getOrCreateConversation(final Group group) {
-        final Recipient recipient = new Recipient(group);
-        return getOrCreateConversation(recipient);
+    private void writeNewMessage(
+            final Realm realm,
+            final ConversationWriteTask task,
+            final List<Runnable> messageBroadcasts,
+            final Map<String, Conversation> changedConversations) {
+        final String threadId = task.getThreadId();
+        final SofaMessage message = task.getSofaMessage();
+        final Conversation storedConversation = getOrCreateConversation(realm, task.getRecipient());
+
+        final boolean isNewMessage = !isInConversation(realm, storedConversation, message.getPrivateKey());
+        if (isNewMessage && shouldSaveTimestampMessage(message, storedConversation)) {
+            final SofaMessage timestampMessage = generateTimestampMessage(message).setThreadId(threadId);
+            storedConversation.addMessage(realm.copyToRealm(timestampMessage));
+            messageBroadcasts.add(() -> broadcastNewChatMessage(threadId, timestampMessage));
+        }
+
+        final SofaMessage storedMessage = realm.copyToRealmOrUpdate(message);
+        if (!isNewMessage) {
+            // Already in the thread, only its contents may have changed
+            storedMessage.setThreadId(threadId);
+            messageBroadcasts.add(() -> broadcastUpdatedChatMessage(threadId, message));
+            return;
+        }
+
+        appendMessage(storedConversation, storedMessage, !threadId.equals(watchedThreadId));
+        messageBroadcasts.add(() -> broadcastNewChatMessage(threadId, message));
+        changedConversations.put(threadId, storedConversation);
     }
 
+    // Must be called inside a transaction, with a message that isn't in the conversation yet.
+    /* package */ static void appendMessage(
+            final Conversation storedConversation,
+            final SofaMessage storedMessage,
+            final boolean countAsUnread) {
+        storedMessage.setThreadId(storedConversation.getThreadId());
+        if (countAsUnread) {
+            storedConversation.setLatestMessageAndUpdateUnreadCounter(storedMessage);
+        } else {
+            storedConversation.setLatestMessage(storedMessage);
+        }
+    }
+
+    // A message can be stored without being part of the thread, e.g. an offline send is written
+    // to the pending message store before it is saved to its conversation. Messages added to a
+    // thread carry its id, so this is a primary key lookup. The thread is only scanned for messages
+    // without one, i.e. stored before the id was added or rewritten by another store, and the id is
+    // filled in when found. Must be called inside a transaction.
+    /* package */ static boolean isInConversation(
+            final Realm realm,
+            final Conversation storedConversation,
+            final String privateKey) {
+        final SofaMessage storedMessage = realm
+                .where(SofaMessage.class)
+                .equalTo(MESSAGE_ID_FIELD, privateKey)
+                .findFirst();
+        if (storedMessage == null) return false;
+
+        final String threadId = storedConversation.getThreadId();
+        if (storedMessage.getThreadId() != null) return storedMessage.getThreadId().equals(threadId);
+
+        final boolean isInThread = storedConversation
+                .queryMessages()
+                .equalTo(MESSAGE_ID_FIELD, privateKey)
+                .findFirst() != null;
+        if (isInThread) storedMessage.setThreadId(threadId);
+        return isInThread;
+    }
+
+    private void writeUpdatedMessage(
+            final Realm realm,
+            final ConversationWriteTask task,
+            final List<Runnable> messageBroadcasts) {
+        final SofaMessage message = task.getSofaMessage();
+        final SofaMessage storedMessage = realm
+                .where(SofaMessage.class)
+                .equalTo(MESSAGE_ID_FIELD, message.getPrivateKey())
+                .findFirst();
+        // Keep the thread the stored message belongs to, the update doesn't know it
+        if (storedMessage != null) message.setThreadId(storedMessage.getThreadId());
+        realm.insertOrUpdate(message);
+        messageBroadcasts.add(() -> broadcastUpdatedChatMessage(task.getThreadId(), message));
+    }
+
+    private void writeDeletedMessage(
+            final Realm realm,
+            final ConversationWriteTask task,
+            final List<Runnable> messageBroadcasts) {
+        final SofaMessage message = task.getSofaMessage();
+        final SofaMessage storedMessage = realm
+                .where(SofaMessage.class)
+                .equalTo(MESSAGE_ID_FIELD, message.getPrivateKey())
+                .findFirst();
+        if (storedMessage == null) return;
+        storedMessage.deleteFromRealm();
+        messageBroadcasts.add(() -> broadcastDeletedChatMessage(task.getThreadId(), message));
+    }
+
+    private void writeUnreadCounterReset(
+            final Realm realm,
+            final ConversationWriteTask task,
+            final Map<String, Conversation> changedConversations) {
+        final Conversation storedConversation = realm
+                .where(Conversation.class)
+                .equalTo(THREAD_ID_FIELD, task.getThreadId())
+                .findFirst();
+        if (storedConversation == null) return;
+        storedConversation.resetUnreadCounter();
+        changedConversations.put(task.getThreadId(), storedConversation);
+    }
+
+    private void logBatchCommitted(final int batchSize, final long commitTimeMs) {
+        committedBatches++;
+        committedWrites += batchSize;
+        totalCommitTimeMs += commitTimeMs;
+        LogUtil.d(getClass(), "Committed " + batchSize + " writes in " + commitTimeMs + "ms"
+                + " (avg batch size: " + (committedWrites / committedBatches)
+                + ", avg commit time: " + (totalCommitTimeMs / committedBatches) + "ms)");
+    }
+
+    // Must be called inside a transaction
     @NonNull
-    private Conversation getOrCreateConversation(final Recipient recipient) {
-        final Conversation existingConversation = loadWhere(THREAD_ID_FIELD, recipient.getThreadId());
+    private Conversation getOrCreateConversation(final Realm realm, final Recipient recipient) {
+        final Conversation existingConversation = realm
+                .where(Conversation.class)
+                .equalTo(THREAD_ID_FIELD, recipient.getThreadId())
+                .findFirst();
         return existingConversation == null
-                ? new Conversation(recipient)
+                ? realm.copyToRealmOrUpdate(new Conversation(recipient))
                 : existingConversation;
     }
 
-    private SofaMessage generateTimestampMessage() {
+    private SofaMessage generateTimestampMessage(final SofaMessage precedingMessage) {
         return new SofaMessage().makeNewTimeStampMessage();
     }
 
@@ -188,119 +403,113 @@ public class ConversationStore {
         return newMessageTimestamp - latestMessageTimestamp > FIFTEEN_MINUTES;
     }
 
-    private void resetUnreadMessageCounter(final String threadId) {
-        Single.fromCallable(() -> {
-            final Conversation storedConversation = loadWhere(THREAD_ID_FIELD, threadId);
-            if (storedConversation == null) {
-                return null;
-            }
-
-            final Realm realm = BaseApplication.get().getRealm();
-            realm.beginTransaction();
-            storedConversation.resetUnreadCounter();
-            realm.insertOrUpdate(storedConversation);
-            realm.commitTransaction();
-            realm.close();
-            return storedConversation;
-        })
-        .observeOn(Schedulers.immediate())
-        .subscribeOn(Schedulers.from(dbThread))
-        .subscribe(
-                this::broadcastConversationChanged,
-                this::handleError
-        );
-    }
-
-    public List<Conversation> loadAll() {
+    public List<ConversationSummary> loadAll() {
         final Realm realm = BaseApplication.get().getRealm();
         final RealmQuery<Conversation> query = realm.where(Conversation.class);
         final RealmResults<Conversation> results = query.findAllSorted("updatedTime", Sort.DESCENDING);
-        final List<Conversation> allConversations = realm.copyFromRealm(results);
+        final List<ConversationSummary> allConversations = new ArrayList<>(results.size());
+        for (final Conversation result : results) {
+            allConversations.add(toSummary(realm, result));
+        }
         realm.close();
         return allConversations;
     }
 
-    private void broadcastConversationChanged(final Conversation conversation) {
-        CONVERSATION_CHANGED_SUBJECT.onNext(conversation);
-    }
-
-    public Single<Conversation> loadByThreadId(final String threadId) {
-        return Single.fromCallable(() -> {
-            resetUnreadMessageCounter(threadId);
-            return loadWhere(THREAD_ID_FIELD, threadId);
-        });
-    }
-
-    private Conversation loadWhere(final String fieldName, final String value) {
+    // Returns up to limit messages stored in the thread before the message with id beforeMessageId,
+    // in the order they were stored. Pass null to get the most recent messages. Paging follows the
+    // stored order rather than creation time, so messages sharing a timestamp and pending sends
+    // keep their place, and stored timestamp separators stay in front of the message they precede.
+    public List<SofaMessage> loadMessages(final String threadId, @Nullable final String beforeMessageId, final int limit) {
         final Realm realm = BaseApplication.get().getRealm();
-        final Conversation result = realm
+        final Conversation storedConversation = realm
                 .where(Conversation.class)
-                .equalTo(fieldName, value)
+                .equalTo(THREAD_ID_FIELD, threadId)
                 .findFirst();
-        final Conversation queriedConversation = result == null ? null : realm.copyFromRealm(result);
+        if (storedConversation == null) {
+            realm.close();
+            return new ArrayList<>(0);
+        }
+
+        final List<SofaMessage> messages = storedConversation.getAllMessages();
+        final int end = beforeMessageId == null
+                ? messages.size()
+                : indexFromEnd(messages, beforeMessageId);
+        final int start = Math.max(0, end - limit);
+        final List<SofaMessage> page = realm.copyFromRealm(messages.subList(start, end));
         realm.close();
-        return queriedConversation;
+        return page;
     }
 
-    public void updateMessage(final Recipient receiver, final SofaMessage message) {
-        Completable.fromAction(() -> {
-            final Realm realm = BaseApplication.get().getRealm();
-            realm.beginTransaction();
-            realm.insertOrUpdate(message);
-            realm.commitTransaction();
-            realm.close();
-        })
-        .observeOn(Schedulers.immediate())
-        .subscribeOn(Schedulers.from(dbThread))
-        .subscribe(
-                () -> broadcastUpdatedChatMessage(receiver.getThreadId(), message),
-                this::handleError
-        );
+    // The cursor is the oldest message already shown, so it is found close to the end of the list.
+    // Returns 0, i.e. no older messages, if the cursor message has since been deleted.
+    private static int indexFromEnd(final List<SofaMessage> messages, final String messageId) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messageId.equals(messages.get(i).getPrivateKey())) return i;
+        }
+        return 0;
     }
 
-    public Completable deleteByThreadId(final String threadId) {
-        return Completable.fromAction(() -> {
+    // Copies the parts of a conversation needed for listing it; the message history is left behind.
+    private ConversationSummary toSummary(final Realm realm, final Conversation storedConversation) {
+        final SofaMessage latestMessage = storedConversation.getLatestMessage();
+        return new ConversationSummary(
+                realm.copyFromRealm(storedConversation.getRecipient()),
+                latestMessage == null ? null : realm.copyFromRealm(latestMessage),
+                storedConversation.getUpdatedTime(),
+                storedConversation.getNumberOfUnread());
+    }
+
+    private void broadcastConversationChanged(final ConversationSummary conversation) {
+        CONVERSATION_CHANGED_SUBJECT.onNext(conversation);
+    }
+
+    public Single<ConversationSummary> loadByThreadId(final String threadId) {
+        return Single.fromCallable(() -> {
+            resetUnreadMessageCounter(threadId);
             final Realm realm = BaseApplication.get().getRealm();
-            realm.beginTransaction();
-            realm
+            final Conversation result = realm
                     .where(Conversation.class)
                     .equalTo(THREAD_ID_FIELD, threadId)
-                    .findFirst()
-                    .deleteFromRealm();
-            realm.commitTransaction();
+                    .findFirst();
+            final ConversationSummary summary = result == null ? null : toSummary(realm, result);
             realm.close();
+            return summary;
         });
     }
 
-    public void deleteMessageById(final Recipient receiver, final SofaMessage message) {
-        Completable.fromAction(() -> {
+    public Completable deleteByThreadId(final String threadId) {
+        return Completable.fromAction(() -> {
             final Realm realm = BaseApplication.get().getRealm();
             realm.beginTransaction();
             realm
-                    .where(SofaMessage.class)
-                    .equalTo(MESSAGE_ID_FIELD, message.getPrivateKey())
+                    .where(Conversation.class)
+                    .equalTo(THREAD_ID_FIELD, threadId)
                     .findFirst()
                     .deleteFromRealm();
             realm.commitTransaction();
             realm.close();
-        })
-        .observeOn(Schedulers.immediate())
-        .subscribeOn(Schedulers.from(dbThread))
-        .subscribe(
-                () -> broadcastDeletedChatMessage(receiver.getThreadId(), message),
-                this::handleError
-        );
+            dbThread.execute(() -> UNREAD_COUNTER.remove(threadId));
+        });
     }
 
-    public boolean areUnreadMessages() {
+    private void seedUnreadCounter() {
         final Realm realm = BaseApplication.get().getRealm();
-        final Conversation result = realm
-                .where(Conversation.class)
-                .greaterThan("numberOfUnread", 0)
-                .findFirst();
-        final boolean areUnreadMessages = result != null;
-        realm.close();
-        return areUnreadMessages;
+        try {
+            final RealmResults<Conversation> results = realm
+                    .where(Conversation.class)
+                    .greaterThan(NUMBER_OF_UNREAD_FIELD, 0)
+                    .findAll();
+            final Map<String, Integer> unreadByThread = new HashMap<>(results.size());
+            for (final Conversation conversation : results) {
+                unreadByThread.put(conversation.getThreadId(), conversation.getNumberOfUnread());
+            }
+            UNREAD_COUNTER.seed(unreadByThread);
+        } catch (final Exception ex) {
+            UNREAD_COUNTER.clear();
+            handleError(ex);
+        } finally {
+            realm.close();
+        }
     }
 
     public Single<SofaMessage> getSofaMessageById(final String id) {
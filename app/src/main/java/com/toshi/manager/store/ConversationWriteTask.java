@@ -0,0 +1,82 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.store;
+
+
+import android.support.annotation.IntDef;
+
+import com.toshi.model.local.Recipient;
+import com.toshi.model.sofa.SofaMessage;
+
+/* package */ final class ConversationWriteTask {
+
+    @IntDef({SAVE_MESSAGE, UPDATE_MESSAGE, DELETE_MESSAGE, SAVE_CONVERSATION, RESET_UNREAD_COUNTER})
+    public @interface Action {}
+    public static final int SAVE_MESSAGE = 0;
+    public static final int UPDATE_MESSAGE = 1;
+    public static final int DELETE_MESSAGE = 2;
+    public static final int SAVE_CONVERSATION = 3;
+    public static final int RESET_UNREAD_COUNTER = 4;
+
+    private final @Action int action;
+    private final String threadId;
+    private final Recipient recipient;
+    private final SofaMessage sofaMessage;
+
+    private ConversationWriteTask(
+            final @Action int action,
+            final String threadId,
+            final Recipient recipient,
+            final SofaMessage sofaMessage) {
+        this.action = action;
+        this.threadId = threadId;
+        this.recipient = recipient;
+        this.sofaMessage = sofaMessage;
+    }
+
+    public static ConversationWriteTask forMessage(
+            final @Action int action,
+            final Recipient recipient,
+            final SofaMessage sofaMessage) {
+        return new ConversationWriteTask(action, recipient.getThreadId(), recipient, sofaMessage);
+    }
+
+    public static ConversationWriteTask forConversation(final Recipient recipient) {
+        return new ConversationWriteTask(SAVE_CONVERSATION, recipient.getThreadId(), recipient, null);
+    }
+
+    public static ConversationWriteTask forUnreadReset(final String threadId) {
+        return new ConversationWriteTask(RESET_UNREAD_COUNTER, threadId, null, null);
+    }
+
+    public @Action int getAction() {
+        return this.action;
+    }
+
+    public String getThreadId() {
+        return this.threadId;
+    }
+
+    public Recipient getRecipient() {
+        return this.recipient;
+    }
+
+    public SofaMessage getSofaMessage() {
+        return this.sofaMessage;
+    }
+}
@@ -19,8 +19,12 @@ package com.toshi.manager.store;
 
 
 import com.toshi.crypto.HDWallet;
+import com.toshi.model.sofa.Payment;
+import com.toshi.model.sofa.SofaAdapters;
+import com.toshi.model.sofa.SofaMessage;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.UUID;
 
 import io.realm.DynamicRealm;
@@ -263,6 +267,44 @@ public class DbMigration implements RealmMigration {
 
             oldVersion++;
         }
+
+        // Store the payment status and age on PendingTransaction
+        if (oldVersion == 17) {
+            schema.get("PendingTransaction")
+                    .addField("status", String.class, FieldAttribute.INDEXED)
+                    .addField("createdTime", long.class)
+                    .transform(obj -> {
+                        final DynamicRealmObject sofaMessage = obj.getObject("sofaMessage");
+                        if (sofaMessage == null) return;
+                        obj.setLong("createdTime", sofaMessage.getLong("creationTime"));
+                        obj.setString("status", readPaymentStatus(sofaMessage.getString("payload")));
+                    });
+            oldVersion++;
+        }
+
+        // Store the thread a message belongs to on the message
+        if (oldVersion == 18) {
+            schema.get("SofaMessage")
+                    .addField("threadId", String.class);
+            schema.get("Conversation")
+                    .transform(obj -> {
+                        final String threadId = obj.getString("threadId");
+                        for (final DynamicRealmObject message : obj.getList("allMessages")) {
+                            message.setString("threadId", threadId);
+                        }
+                    });
+            oldVersion++;
+        }
+    }
+
+    private String readPaymentStatus(final String payloadWithHeaders) {
+        try {
+            final String payload = new SofaMessage().makeNew(payloadWithHeaders).getPayload();
+            final Payment payment = SofaAdapters.get().paymentFrom(payload);
+            return payment.getStatus();
+        } catch (final IOException ex) {
+            return null;
+        }
     }
 
     @Override
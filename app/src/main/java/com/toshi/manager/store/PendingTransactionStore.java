@@ -19,13 +19,13 @@ package com.toshi.manager.store;
 
 
 import com.toshi.model.local.PendingTransaction;
+import com.toshi.model.sofa.SofaType;
 import com.toshi.view.BaseApplication;
 
 import java.util.List;
 
 import io.realm.Realm;
 import io.realm.RealmQuery;
-import rx.Observable;
 import rx.Single;
 import rx.subjects.PublishSubject;
 
@@ -53,8 +53,8 @@ public class PendingTransactionStore {
         return Single.fromCallable(() -> loadSingleWhere("txHash", txHash));
     }
 
-    public Observable<PendingTransaction> loadAllTransactions() {
-        return Observable.from(loadAll());
+    public Single<List<PendingTransaction>> loadUnconfirmedTransactions() {
+        return Single.fromCallable(this::loadUnconfirmed);
     }
 
     private PendingTransaction loadSingleWhere(final String fieldName, final String value) {
@@ -69,10 +69,11 @@ public class PendingTransactionStore {
         return queriedPendingTransaction;
     }
 
-    private List<PendingTransaction> loadAll() {
+    private List<PendingTransaction> loadUnconfirmed() {
         final Realm realm = BaseApplication.get().getRealm();
         final RealmQuery<PendingTransaction> query = realm
-                .where(PendingTransaction.class);
+                .where(PendingTransaction.class)
+                .equalTo("status", SofaType.UNCONFIRMED);
 
         final List<PendingTransaction> pendingTransactions = query.findAll();
         final List<PendingTransaction> allPendingTransactions = realm.copyFromRealm(pendingTransactions);
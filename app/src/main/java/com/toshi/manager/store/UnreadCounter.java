@@ -0,0 +1,101 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.store;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.subjects.BehaviorSubject;
+
+// Running total of unread messages across all conversations. It is seeded from the
+// database once and then kept in step with the numberOfUnread of every conversation
+// a write batch touches, so showing the unread badge never has to query Realm.
+/* package */ class UnreadCounter {
+
+    private final Map<String, Integer> unreadByThread;
+    private final BehaviorSubject<Integer> totalSubject;
+    private final AtomicBoolean isSeedRequested;
+    private boolean isSeeded;
+    private int total;
+
+    /* package */ UnreadCounter() {
+        this.unreadByThread = new HashMap<>();
+        this.totalSubject = BehaviorSubject.create();
+        this.isSeedRequested = new AtomicBoolean(false);
+    }
+
+    // Returns true for the first caller only, who is then responsible for calling seed
+    /* package */ boolean requestSeed() {
+        return this.isSeedRequested.compareAndSet(false, true);
+    }
+
+    /* package */ synchronized void seed(final Map<String, Integer> unreadByThread) {
+        this.unreadByThread.clear();
+        this.total = 0;
+        for (final Map.Entry<String, Integer> entry : unreadByThread.entrySet()) {
+            if (entry.getValue() <= 0) continue;
+            this.unreadByThread.put(entry.getKey(), entry.getValue());
+            this.total += entry.getValue();
+        }
+        this.isSeeded = true;
+        this.totalSubject.onNext(this.total);
+    }
+
+    // Changes made before the counter is seeded are already part of the seed
+    /* package */ synchronized void update(final Map<String, Integer> unreadByThread) {
+        if (!this.isSeeded || unreadByThread.isEmpty()) return;
+        final int previousTotal = this.total;
+        for (final Map.Entry<String, Integer> entry : unreadByThread.entrySet()) {
+            set(entry.getKey(), entry.getValue());
+        }
+        if (this.total != previousTotal) this.totalSubject.onNext(this.total);
+    }
+
+    /* package */ synchronized void remove(final String threadId) {
+        if (!this.isSeeded) return;
+        final int previousTotal = this.total;
+        set(threadId, 0);
+        if (this.total != previousTotal) this.totalSubject.onNext(this.total);
+    }
+
+    /* package */ synchronized void clear() {
+        this.unreadByThread.clear();
+        this.total = 0;
+        this.isSeeded = false;
+        this.isSeedRequested.set(false);
+        this.totalSubject.onNext(0);
+    }
+
+    // Latest total only; a slow subscriber skips the intermediate values
+    /* package */ Observable<Integer> asObservable() {
+        return this.totalSubject
+                .asObservable()
+                .onBackpressureLatest()
+                .distinctUntilChanged();
+    }
+
+    private void set(final String threadId, final int unread) {
+        final Integer previous = unread > 0
+                ? this.unreadByThread.put(threadId, unread)
+                : this.unreadByThread.remove(threadId);
+        this.total += unread - (previous == null ? 0 : previous);
+    }
+}
@@ -21,11 +21,14 @@ package com.toshi.manager.store;
 import com.toshi.model.local.User;
 import com.toshi.view.BaseApplication;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import io.realm.Case;
 import io.realm.Realm;
 import io.realm.RealmQuery;
+import io.realm.RealmResults;
 import rx.Observable;
 import rx.Single;
 
@@ -35,6 +38,20 @@ public class UserStore {
         return Observable.fromCallable(() -> loadWhere("owner_address", toshiId));
     }
 
+    public List<User> loadForToshiIds(final Collection<String> toshiIds) {
+        if (toshiIds.isEmpty()) return new ArrayList<>();
+
+        final Realm realm = BaseApplication.get().getRealm();
+        final RealmResults<User> users =
+                realm.where(User.class)
+                .in("owner_address", toshiIds.toArray(new String[toshiIds.size()]))
+                .findAll();
+
+        final List<User> queriedUsers = realm.copyFromRealm(users);
+        realm.close();
+        return queriedUsers;
+    }
+
     public User loadForPaymentAddress(final String address) {
         return loadWhere("payment_address", address);
     }
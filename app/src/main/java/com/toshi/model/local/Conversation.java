@@ -26,6 +26,7 @@ import java.util.List;
 
 import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.RealmQuery;
 import io.realm.annotations.PrimaryKey;
 
 public class Conversation extends RealmObject {
@@ -57,18 +58,14 @@ public class Conversation extends RealmObject {
         return latestMessage;
     }
 
+    // The caller is responsible for not adding the same message twice,
+    // see ConversationStore.appendMessage
     public Conversation setLatestMessageAndUpdateUnreadCounter(final SofaMessage latestMessage) {
-        if (isDuplicateMessage(latestMessage)) {
-            return this;
-        }
         this.numberOfUnread++;
         return addLatestMessage(latestMessage);
     }
 
     public Conversation setLatestMessage(final SofaMessage latestMessage) {
-        if (isDuplicateMessage(latestMessage)) {
-            return this;
-        }
         return addLatestMessage(latestMessage);
     }
 
@@ -79,10 +76,6 @@ public class Conversation extends RealmObject {
         return this;
     }
 
-    private boolean isDuplicateMessage(final SofaMessage message) {
-        return this.allMessages != null && this.allMessages.contains(message);
-    }
-
     public void addMessage(final SofaMessage latestMessage) {
         if (this.allMessages == null) {
             this.allMessages = new RealmList<>();
@@ -95,6 +88,11 @@ public class Conversation extends RealmObject {
         return allMessages;
     }
 
+    // Only valid on a managed Conversation
+    public RealmQuery<SofaMessage> queryMessages() {
+        return this.allMessages.where();
+    }
+
     public int getNumberOfUnread() {
         return numberOfUnread;
     }
@@ -37,7 +37,6 @@ import io.realm.RealmList;
 import io.realm.RealmObject;
 import io.realm.annotations.Ignore;
 import io.realm.annotations.PrimaryKey;
-import rx.Observable;
 import rx.Single;
 import rx.schedulers.Schedulers;
 
@@ -82,16 +81,10 @@ public class Group extends RealmObject {
     }
 
     private Single<List<User>> lookupUsers(final List<String> userIds) {
-        return Observable
-                .from(userIds)
-                .flatMap( uid -> BaseApplication
-                            .get()
-                            .getRecipientManager()
-                            .getUserFromToshiId(uid)
-                            .toObservable()
-                )
-                .toList()
-                .toSingle()
+        return BaseApplication
+                .get()
+                .getRecipientManager()
+                .getUsers(userIds)
                 .subscribeOn(Schedulers.io());
     }
 
@@ -19,8 +19,10 @@ package com.toshi.model.local;
 
 
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaType;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
 public class PendingTransaction extends RealmObject {
@@ -28,8 +30,14 @@ public class PendingTransaction extends RealmObject {
     @PrimaryKey
     private String txHash;
     private SofaMessage sofaMessage;
+    // Mirrors the status in the payment payload so unconfirmed transactions can be queried without parsing
+    @Index
+    private String status;
+    private long createdTime;
 
-    public PendingTransaction() {}
+    public PendingTransaction() {
+        this.createdTime = System.currentTimeMillis();
+    }
 
     public String getTxHash() {
         return txHash;
@@ -48,4 +56,26 @@ public class PendingTransaction extends RealmObject {
         this.sofaMessage = sofaMessage;
         return this;
     }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public PendingTransaction setStatus(final String status) {
+        this.status = status;
+        return this;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public PendingTransaction setCreatedTime(final long createdTime) {
+        this.createdTime = createdTime;
+        return this;
+    }
+
+    public boolean isUnconfirmed() {
+        return SofaType.UNCONFIRMED.equals(this.status);
+    }
 }
@@ -22,6 +22,12 @@ public final class ServerTime {
 
     private long timestamp;
 
+    public ServerTime() {}
+
+    public ServerTime(final long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public final long get() {
         return this.timestamp;
     }
@@ -24,4 +24,9 @@ public class UnsignedTransaction {
     public String getTransaction() {
         return this.tx;
     }
+
+    public UnsignedTransaction setTransaction(final String tx) {
+        this.tx = tx;
+        return this;
+    }
 }
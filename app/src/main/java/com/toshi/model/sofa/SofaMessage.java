@@ -33,6 +33,9 @@ import io.realm.annotations.PrimaryKey;
 
 public class SofaMessage extends RealmObject {
 
+    private static final Pattern PAYLOAD_PATTERN = Pattern.compile("\\{.*\\}");
+    private static final Pattern SOFA_HEADER_PATTERN = Pattern.compile("SOFA::.+?:");
+
     @PrimaryKey
     private String privateKey;
     private long creationTime;
@@ -42,6 +45,8 @@ public class SofaMessage extends RealmObject {
     private String attachmentFilePath;
     private User sender;
     private SofaError errorMessage;
+    // The thread the message has been added to, null until then
+    private String threadId;
 
     public SofaMessage() {
         this.creationTime = System.currentTimeMillis();
@@ -80,6 +85,11 @@ public class SofaMessage extends RealmObject {
         return this;
     }
 
+    public SofaMessage setThreadId(final String threadId) {
+        this.threadId = threadId;
+        return this;
+    }
+
     // Getters
 
     public String getPrivateKey() {
@@ -106,6 +116,10 @@ public class SofaMessage extends RealmObject {
         return this.sender;
     }
 
+    public String getThreadId() {
+        return this.threadId;
+    }
+
     public @Nullable String getSenderAvatar() {
         return this.sender == null ? null : this.sender.getAvatar();
     }
@@ -140,9 +154,7 @@ public class SofaMessage extends RealmObject {
     }
 
     private String cleanPayload(final String payload) {
-        final String regexString = "\\{.*\\}";
-        final Pattern pattern = Pattern.compile(regexString);
-        final Matcher m = pattern.matcher(payload);
+        final Matcher m = PAYLOAD_PATTERN.matcher(payload);
         if (m.find()) {
             return m.group();
         }
@@ -150,9 +162,7 @@ public class SofaMessage extends RealmObject {
     }
 
     private String getSofaHeader(final String payload) {
-        final String regexString = "SOFA::.+?:";
-        final Pattern pattern = Pattern.compile(regexString);
-        final Matcher m = pattern.matcher(payload);
+        final Matcher m = SOFA_HEADER_PATTERN.matcher(payload);
         if (m.find()) {
             return m.group();
         }
@@ -0,0 +1,76 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.model.sofa;
+
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+
+// The parsed form of a SofaMessage payload. Instances are shared through
+// SofaPayloadCache, so they must be treated as read-only.
+public final class SofaPayload {
+
+    private final String rawPayload;
+    private final @Nullable Message message;
+    private final @Nullable Payment payment;
+    private final @Nullable PaymentRequest paymentRequest;
+
+    private SofaPayload(
+            final String rawPayload,
+            final @Nullable Message message,
+            final @Nullable Payment payment,
+            final @Nullable PaymentRequest paymentRequest) {
+        this.rawPayload = rawPayload;
+        this.message = message;
+        this.payment = payment;
+        this.paymentRequest = paymentRequest;
+    }
+
+    /* package */ static SofaPayload parse(final SofaMessage sofaMessage) throws IOException {
+        final String rawPayload = sofaMessage.getPayloadWithHeaders();
+        final String payload = sofaMessage.getPayload();
+        switch (sofaMessage.getType()) {
+            case SofaType.PLAIN_TEXT:
+            case SofaType.COMMAND_REQUEST:
+                return new SofaPayload(rawPayload, SofaAdapters.get().messageFrom(payload), null, null);
+            case SofaType.PAYMENT:
+                return new SofaPayload(rawPayload, null, SofaAdapters.get().paymentFrom(payload), null);
+            case SofaType.PAYMENT_REQUEST:
+                return new SofaPayload(rawPayload, null, null, SofaAdapters.get().txRequestFrom(payload));
+            default:
+                return new SofaPayload(rawPayload, null, null, null);
+        }
+    }
+
+    /* package */ boolean isParsedFrom(final String rawPayload) {
+        return this.rawPayload.equals(rawPayload);
+    }
+
+    public @Nullable Message getMessage() {
+        return this.message;
+    }
+
+    public @Nullable Payment getPayment() {
+        return this.payment;
+    }
+
+    public @Nullable PaymentRequest getPaymentRequest() {
+        return this.paymentRequest;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.model.sofa;
+
+
+import android.util.LruCache;
+
+import com.toshi.util.LogUtil;
+
+import java.io.IOException;
+import java.util.List;
+
+// Keeps parsed payloads by message so that binding a message doesn't repeat the
+// regex and JSON work. An entry is reparsed if the message's payload has changed.
+public class SofaPayloadCache {
+
+    private static final int MAX_CACHED_PAYLOADS = 500;
+
+    private static SofaPayloadCache instance;
+
+    private final LruCache<String, SofaPayload> payloads;
+
+    public static SofaPayloadCache get() {
+        if (instance == null) {
+            instance = getSync();
+        }
+        return instance;
+    }
+
+    private static synchronized SofaPayloadCache getSync() {
+        if (instance == null) {
+            instance = new SofaPayloadCache();
+        }
+        return instance;
+    }
+
+    private SofaPayloadCache() {
+        this.payloads = new LruCache<>(MAX_CACHED_PAYLOADS);
+    }
+
+    public SofaPayload load(final SofaMessage sofaMessage) throws IOException {
+        final String privateKey = sofaMessage.getPrivateKey();
+        if (privateKey == null) return SofaPayload.parse(sofaMessage);
+
+        final SofaPayload cachedPayload = this.payloads.get(privateKey);
+        if (cachedPayload != null && cachedPayload.isParsedFrom(sofaMessage.getPayloadWithHeaders())) {
+            return cachedPayload;
+        }
+
+        final SofaPayload payload = SofaPayload.parse(sofaMessage);
+        this.payloads.put(privateKey, payload);
+        return payload;
+    }
+
+    // Parses payloads ahead of time, call this off the main thread
+    public void preload(final List<SofaMessage> sofaMessages) {
+        for (final SofaMessage sofaMessage : sofaMessages) {
+            preload(sofaMessage);
+        }
+    }
+
+    // Parses a payload ahead of time, call this off the main thread
+    public void preload(final SofaMessage sofaMessage) {
+        if (sofaMessage == null || sofaMessage.getPayloadWithHeaders() == null) return;
+        try {
+            load(sofaMessage);
+        } catch (final IOException ex) {
+            LogUtil.i(getClass(), "Unable to parse payload. " + ex);
+        }
+    }
+}
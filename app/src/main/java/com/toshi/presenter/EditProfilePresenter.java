@@ -122,7 +122,7 @@ public class EditProfilePresenter implements Presenter<EditProfileActivity> {
             return;
         }
         this.activity.getBinding().avatar.setImageResource(0);
-        ImageUtil.loadFromNetwork(this.avatarUrl, this.activity.getBinding().avatar);
+        ImageUtil.forceLoad(this.avatarUrl, this.activity.getBinding().avatar);
     }
 
     private void initClickListeners() {
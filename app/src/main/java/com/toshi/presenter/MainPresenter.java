@@ -27,7 +27,6 @@ import android.support.v7.app.AlertDialog;
 import com.aurelhubert.ahbottomnavigation.AHBottomNavigation;
 import com.aurelhubert.ahbottomnavigation.AHBottomNavigationAdapter;
 import com.toshi.R;
-import com.toshi.manager.SofaMessageManager;
 import com.toshi.util.LogUtil;
 import com.toshi.util.SharedPrefsUtil;
 import com.toshi.util.SoundManager;
@@ -106,32 +105,21 @@ public class MainPresenter implements Presenter<MainActivity> {
     }
 
     private void attachUnreadMessagesSubscription() {
-        final SofaMessageManager messageManager =
+        final Subscription sub =
                 BaseApplication
                 .get()
-                .getSofaMessageManager();
-
-        final Subscription allChangesSubscription =
-                messageManager.registerForAllConversationChanges()
-                .flatMap((unused) -> messageManager.areUnreadMessages().toObservable())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(
-                        this::handleUnreadMessages,
-                        this::handleUnreadMessagesError
-                );
-
-        final Subscription firstTimeSubscription =
-                messageManager
-                .areUnreadMessages()
-                .toObservable()
+                .getSofaMessageManager()
+                .getUnreadCountObservable()
+                .map(unreadCount -> unreadCount > 0)
+                .distinctUntilChanged()
+                .onBackpressureLatest()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         this::handleUnreadMessages,
                         this::handleUnreadMessagesError
                 );
 
-        this.subscriptions.add(allChangesSubscription);
-        this.subscriptions.add(firstTimeSubscription);
+        this.subscriptions.add(sub);
     }
 
     private void handleUnreadMessagesError(final Throwable throwable) {
@@ -25,7 +25,7 @@ import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.helper.ItemTouchHelper;
 
 import com.toshi.R;
-import com.toshi.model.local.Conversation;
+import com.toshi.model.local.ConversationSummary;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 import com.toshi.view.activity.ChatActivity;
@@ -43,7 +43,7 @@ import rx.subscriptions.CompositeSubscription;
 
 public final class RecentPresenter implements
         Presenter<RecentFragment>,
-        OnItemClickListener<Conversation> {
+        OnItemClickListener<ConversationSummary> {
 
     private RecentFragment fragment;
     private boolean firstTimeAttaching = true;
@@ -128,9 +128,8 @@ public final class RecentPresenter implements
         this.subscriptions.add(sub);
     }
 
-    private void handleConversations(final List<Conversation> conversations) {
-        this.adapter.setConversations(conversations);
-        updateEmptyState();
+    private void handleConversations(final List<ConversationSummary> conversations) {
+        this.adapter.setConversations(conversations, this::updateEmptyState);
     }
 
     private void handleConversationsError(final Throwable throwable) {
@@ -152,7 +151,7 @@ public final class RecentPresenter implements
         this.subscriptions.add(sub);
     }
 
-    private void handleConversation(final Conversation updatedConversation) {
+    private void handleConversation(final ConversationSummary updatedConversation) {
         this.adapter.updateConversation(updatedConversation);
         updateEmptyState();
     }
@@ -177,7 +176,7 @@ public final class RecentPresenter implements
     }
 
     @Override
-    public void onItemClick(final Conversation clickedConversation) {
+    public void onItemClick(final ConversationSummary clickedConversation) {
         if (this.fragment == null) return;
         final Intent intent = new Intent(this.fragment.getActivity(), ChatActivity.class);
         intent.putExtra(ChatActivity.EXTRA__THREAD_ID, clickedConversation.getThreadId());
@@ -22,6 +22,7 @@ import android.app.Activity;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.Pair;
 import android.view.View;
@@ -35,7 +36,7 @@ import com.toshi.crypto.HDWallet;
 import com.toshi.exception.PermissionException;
 import com.toshi.manager.messageQueue.AsyncOutgoingMessageQueue;
 import com.toshi.model.local.ActivityResultHolder;
-import com.toshi.model.local.Conversation;
+import com.toshi.model.local.ConversationSummary;
 import com.toshi.model.local.Group;
 import com.toshi.model.local.Network;
 import com.toshi.model.local.Networks;
@@ -49,6 +50,7 @@ import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.PaymentRequest;
 import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.presenter.AmountPresenter;
 import com.toshi.presenter.Presenter;
 import com.toshi.util.BuildTypes;
@@ -72,6 +74,7 @@ import com.toshi.view.notification.ChatNotificationManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import rx.Observable;
 import rx.Single;
@@ -92,6 +95,8 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
     private static final int CAPTURE_IMAGE = 4;
     private static final int CONFIRM_ATTACHMENT = 5;
     private static final String CAPTURE_FILENAME = "caputureImageFilename";
+    private static final int MESSAGE_PAGE_SIZE = 50;
+    private static final int OLDER_MESSAGES_PREFETCH_DISTANCE = 10;
 
     private ChatActivity activity;
     private ChatNavigation chatNavigation;
@@ -113,7 +118,10 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
     private int lastVisibleMessagePosition;
     private String captureImageFilename;
     private Recipient recipient;
-    private Conversation conversation;
+    private ConversationSummary conversation;
+    private String oldestLoadedMessageId;
+    private boolean hasOlderMessages;
+    private boolean isLoadingOlderMessages;
 
     private ResendHandler resendHandler;
 
@@ -298,8 +306,19 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
         if (this.activity == null) return;
         attachMessageAdapter();
         this.activity.getBinding().messagesList.setScrollContainer(true);
+        this.activity.getBinding().messagesList.addOnScrollListener(this.olderMessagesScrollListener);
     }
 
+    private final RecyclerView.OnScrollListener olderMessagesScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(final RecyclerView recyclerView, final int dx, final int dy) {
+            // Only fetch when scrolling up towards the oldest loaded message
+            if (dy >= 0 || layoutManager == null) return;
+            if (layoutManager.findFirstVisibleItemPosition() > OLDER_MESSAGES_PREFETCH_DISTANCE) return;
+            tryLoadOlderMessages();
+        }
+    };
+
     private void attachMessageAdapter() {
         if (this.messageAdapter == null) return;
         this.messageAdapter.notifyDataSetChanged();
@@ -448,6 +467,8 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
                 this.pendingTransactionsObservable
                     .init(this.recipient.getUser())
                     .subscribeOn(Schedulers.io())
+                    .observeOn(Schedulers.io())
+                    .doOnNext(pendingTransaction -> SofaPayloadCache.get().preload(pendingTransaction.getSofaMessage()))
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(
                             pendingTransaction -> handleUpdatedMessage(pendingTransaction.getSofaMessage()),
@@ -730,34 +751,96 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
         this.subscriptions.add(conversationLoadedSub);
     }
 
-    private void handleConversationLoaded(final Conversation conversation) {
+    private void handleConversationLoaded(final ConversationSummary conversation) {
         this.conversation = conversation;
-        initConversation(conversation);
-        updateEmptyState();
-        tryClearMessageSubscriptions();
-        initMessageObservables();
-    }
-
-    private void initConversation(final Conversation conversation) {
         initConversationRecipient();
-        initConversationMessages(conversation);
+        loadLatestMessages();
     }
 
     private void initConversationRecipient() {
         this.messageAdapter.setRecipient(this.recipient);
     }
 
-    private void initConversationMessages(final Conversation conversation) {
-        final boolean shouldAddMessages = conversation != null && conversation.getAllMessages() != null && conversation.getAllMessages().size() > 0;
-        if (shouldAddMessages) {
-            this.messageAdapter.setMessages(conversation.getAllMessages());
-            scrollToPosition(getSafePosition());
-            updateControlView();
+    private void loadLatestMessages() {
+        this.oldestLoadedMessageId = null;
+        this.hasOlderMessages = false;
+        this.isLoadingOlderMessages = false;
+
+        final Subscription sub =
+                loadMessagePage(this.oldestLoadedMessageId)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        this::handleLatestMessagesLoaded,
+                        this::handleError
+                );
+
+        this.subscriptions.add(sub);
+    }
+
+    private void handleLatestMessagesLoaded(final List<SofaMessage> messages) {
+        if (this.messageAdapter == null) return;
+        updatePagingState(messages);
+        initConversationMessages(messages);
+        updateEmptyState();
+        tryClearMessageSubscriptions();
+        initMessageObservables();
+    }
+
+    private void initConversationMessages(final List<SofaMessage> messages) {
+        if (messages.size() > 0) {
+            this.messageAdapter.setMessages(messages, this::handleMessagesApplied);
         } else {
             tryInitAppConversation();
         }
     }
 
+    private void handleMessagesApplied() {
+        if (this.messageAdapter == null) return;
+        scrollToPosition(getSafePosition());
+        updateControlView();
+    }
+
+    private void tryLoadOlderMessages() {
+        if (this.isLoadingOlderMessages || !this.hasOlderMessages || this.recipient == null) return;
+        this.isLoadingOlderMessages = true;
+
+        final Subscription sub =
+                loadMessagePage(this.oldestLoadedMessageId)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        this::handleOlderMessagesLoaded,
+                        this::handleOlderMessagesError
+                );
+
+        this.subscriptions.add(sub);
+    }
+
+    private void handleOlderMessagesLoaded(final List<SofaMessage> messages) {
+        this.isLoadingOlderMessages = false;
+        if (this.messageAdapter == null) return;
+        updatePagingState(messages);
+        this.messageAdapter.addOlderMessages(messages);
+    }
+
+    private void handleOlderMessagesError(final Throwable throwable) {
+        this.isLoadingOlderMessages = false;
+        handleError(throwable);
+    }
+
+    private Single<List<SofaMessage>> loadMessagePage(final String beforeMessageId) {
+        return BaseApplication
+                .get()
+                .getSofaMessageManager()
+                .loadMessages(this.recipient.getThreadId(), beforeMessageId, MESSAGE_PAGE_SIZE);
+    }
+
+    private void updatePagingState(final List<SofaMessage> page) {
+        this.hasOlderMessages = page.size() == MESSAGE_PAGE_SIZE;
+        if (page.size() > 0) {
+            this.oldestLoadedMessageId = page.get(0).getPrivateKey();
+        }
+    }
+
     private void tryInitAppConversation() {
         if (this.recipient.isGroup() || !this.recipient.getUser().isApp()) return;
 
@@ -770,9 +853,12 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
     }
 
     private void initMessageObservables() {
+        // Payloads are parsed on io before a message reaches the adapter, which binds on the UI thread
         this.newMessageSubscription =
                 this.chatObservables.first
                 .subscribeOn(Schedulers.io())
+                .observeOn(Schedulers.io())
+                .doOnNext(SofaPayloadCache.get()::preload)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         this::handleNewMessage,
@@ -782,6 +868,8 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
         this.updatedMessageSubscription =
                 this.chatObservables.second
                 .subscribeOn(Schedulers.io())
+                .observeOn(Schedulers.io())
+                .doOnNext(SofaPayloadCache.get()::preload)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         this::handleUpdatedMessage,
@@ -0,0 +1,368 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview;
+
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import com.toshi.R;
+import com.toshi.manager.network.SharedHttpClient;
+import com.toshi.presenter.webview.model.JsonRpcRequest;
+import com.toshi.presenter.webview.model.JsonRpcResponse;
+import com.toshi.view.BaseApplication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import rx.Observable;
+import rx.Single;
+import rx.schedulers.Schedulers;
+
+// Sits between dapps and the remote node. Identical calls that are in flight are
+// sent once, results that can never change (looked up by hash) are kept, and
+// results that depend on the latest block are kept until a new block is seen or
+// BLOCK_TIME_MS has passed. Calls that miss are forwarded as a single batch.
+/* package */ class JsonRpcProxy {
+
+    /* package */ interface Transport {
+        String post(String body) throws IOException;
+    }
+
+    private static final long BLOCK_TIME_MS = 15 * 1000;
+    private static final long BLOCK_NUMBER_MAX_AGE_MS = 3 * 1000;
+    private static final int MAX_IMMUTABLE_RESULTS = 256;
+    private static final int INTERNAL_ERROR = -32603;
+    private static final String BLOCK_NUMBER = "eth_blockNumber";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final Set<String> IMMUTABLE_METHODS = new HashSet<>(Arrays.asList(
+            "eth_getBlockByHash",
+            "eth_getBlockTransactionCountByHash",
+            "eth_getTransactionByHash",
+            "eth_getTransactionByBlockHashAndIndex",
+            "eth_getTransactionReceipt",
+            "eth_getUncleByBlockHashAndIndex",
+            "eth_getUncleCountByBlockHash",
+            "net_version",
+            "web3_clientVersion"
+    ));
+
+    // Transactions returned by these are pending until they have a block hash
+    private static final Set<String> TRANSACTION_METHODS = new HashSet<>(Arrays.asList(
+            "eth_getTransactionByHash",
+            "eth_getTransactionByBlockHashAndIndex"
+    ));
+
+    private static final Set<String> BLOCK_SCOPED_METHODS = new HashSet<>(Arrays.asList(
+            BLOCK_NUMBER,
+            "eth_call",
+            "eth_estimateGas",
+            "eth_gasPrice",
+            "eth_getBalance",
+            "eth_getBlockByNumber",
+            "eth_getBlockTransactionCountByNumber",
+            "eth_getCode",
+            "eth_getLogs",
+            "eth_getStorageAt",
+            "eth_getTransactionCount"
+    ));
+
+    private static final Set<String> STATE_CHANGING_METHODS = new HashSet<>(Arrays.asList(
+            "eth_sendRawTransaction",
+            "eth_sendTransaction"
+    ));
+
+    private static JsonRpcProxy instance;
+
+    private final Transport transport;
+    private final JsonAdapter<JsonRpcRequest> requestAdapter;
+    private final JsonAdapter<List<JsonRpcRequest>> requestsAdapter;
+    private final JsonAdapter<JsonRpcResponse> responseAdapter;
+    private final JsonAdapter<List<JsonRpcResponse>> responsesAdapter;
+    private final JsonAdapter<List<Object>> paramsAdapter;
+    private final Map<String, JsonRpcResponse> immutableResults;
+    private final Map<String, BlockScopedResult> blockScopedResults;
+    private final ConcurrentMap<String, Observable<JsonRpcResponse>> inFlightCalls;
+    private final AtomicInteger nextUpstreamId;
+    private Object latestBlockNumber;
+
+    /* package */ static JsonRpcProxy get() {
+        if (instance == null) {
+            instance = getSync();
+        }
+        return instance;
+    }
+
+    private static synchronized JsonRpcProxy getSync() {
+        if (instance == null) {
+            final String rpcUrl = BaseApplication.get().getResources().getString(R.string.rcp_url);
+            instance = new JsonRpcProxy(body -> postToNode(rpcUrl, body));
+        }
+        return instance;
+    }
+
+    /* package */ JsonRpcProxy(final Transport transport) {
+        this.transport = transport;
+        final Moshi moshi = new Moshi.Builder().build();
+        this.requestAdapter = moshi.adapter(JsonRpcRequest.class);
+        this.requestsAdapter = moshi.adapter(Types.newParameterizedType(List.class, JsonRpcRequest.class));
+        this.responseAdapter = moshi.adapter(JsonRpcResponse.class).serializeNulls();
+        this.responsesAdapter = moshi.<List<JsonRpcResponse>>adapter(Types.newParameterizedType(List.class, JsonRpcResponse.class)).serializeNulls();
+        this.paramsAdapter = moshi.adapter(Types.newParameterizedType(List.class, Object.class));
+        this.immutableResults = new LinkedHashMap<String, JsonRpcResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, JsonRpcResponse> eldest) {
+                return size() > MAX_IMMUTABLE_RESULTS;
+            }
+        };
+        this.blockScopedResults = new HashMap<>();
+        this.inFlightCalls = new ConcurrentHashMap<>();
+        this.nextUpstreamId = new AtomicInteger(1);
+    }
+
+    // Accepts a JSON-RPC request or batch array and returns the matching response or array
+    /* package */ Single<String> send(final String payload) {
+        final String trimmedPayload = payload.trim();
+        final boolean isBatch = trimmedPayload.startsWith("[");
+        return Single
+                .fromCallable(() -> isBatch
+                        ? this.requestsAdapter.fromJson(trimmedPayload)
+                        : Collections.singletonList(this.requestAdapter.fromJson(trimmedPayload)))
+                .flatMap(this::resolve)
+                .map(responses -> isBatch
+                        ? this.responsesAdapter.toJson(responses)
+                        : this.responseAdapter.toJson(responses.get(0)));
+    }
+
+    private Single<List<JsonRpcResponse>> resolve(final List<JsonRpcRequest> requests) {
+        final List<JsonRpcRequest> misses = new ArrayList<>();
+        final Map<String, Integer> missIndexByKey = new HashMap<>();
+        // Either a call that already answers the request, or the index of the miss that will
+        final List<Observable<JsonRpcResponse>> answers = new ArrayList<>(requests.size());
+        final int[] missIndexes = new int[requests.size()];
+
+        for (int i = 0; i < requests.size(); i++) {
+            final JsonRpcRequest request = requests.get(i);
+            final String key = getCacheKey(request);
+            final JsonRpcResponse cachedResponse = key == null ? null : getCachedResponse(request.getMethod(), key);
+            final Observable<JsonRpcResponse> inFlightCall = key == null ? null : this.inFlightCalls.get(key);
+
+            if (cachedResponse != null) {
+                answers.add(Observable.just(cachedResponse));
+            } else if (inFlightCall != null) {
+                answers.add(inFlightCall);
+            } else if (key != null && missIndexByKey.containsKey(key)) {
+                answers.add(null);
+                missIndexes[i] = missIndexByKey.get(key);
+            } else {
+                if (key != null) missIndexByKey.put(key, misses.size());
+                answers.add(null);
+                missIndexes[i] = misses.size();
+                misses.add(request);
+            }
+        }
+
+        final List<Observable<JsonRpcResponse>> missCalls = forwardMisses(misses);
+        final List<Observable<JsonRpcResponse>> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final Observable<JsonRpcResponse> answer = answers.get(i) != null
+                    ? answers.get(i)
+                    : missCalls.get(missIndexes[i]);
+            final Object callerId = normaliseId(requests.get(i).getId());
+            responses.add(answer.map(response -> response.withId(callerId)));
+        }
+
+        return Observable
+                .concat(Observable.from(responses))
+                .toList()
+                .toSingle();
+    }
+
+    private List<Observable<JsonRpcResponse>> forwardMisses(final List<JsonRpcRequest> misses) {
+        if (misses.size() == 0) return Collections.emptyList();
+
+        final Observable<List<JsonRpcResponse>> upstreamCall = Observable
+                .fromCallable(() -> forward(misses))
+                .subscribeOn(Schedulers.io())
+                .cache();
+
+        final List<Observable<JsonRpcResponse>> missCalls = new ArrayList<>(misses.size());
+        for (int i = 0; i < misses.size(); i++) {
+            final int missIndex = i;
+            final Observable<JsonRpcResponse> call = upstreamCall
+                    .map(upstreamResponses -> upstreamResponses.get(missIndex))
+                    .cache();
+            final String key = getCacheKey(misses.get(i));
+            if (key != null) this.inFlightCalls.putIfAbsent(key, call);
+            missCalls.add(call);
+        }
+        return missCalls;
+    }
+
+    private List<JsonRpcResponse> forward(final List<JsonRpcRequest> requests) throws IOException {
+        try {
+            final List<JsonRpcRequest> batch = new ArrayList<>(requests.size());
+            for (final JsonRpcRequest request : requests) {
+                batch.add(request.withId((long) this.nextUpstreamId.getAndIncrement()));
+            }
+
+            final Map<Object, JsonRpcResponse> responsesById = new HashMap<>(requests.size());
+            for (final JsonRpcResponse response : post(batch)) {
+                responsesById.put(normaliseId(response.getId()), response);
+            }
+
+            final List<JsonRpcResponse> orderedResponses = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                final JsonRpcRequest request = requests.get(i);
+                final JsonRpcResponse response = responsesById.get(batch.get(i).getId());
+                if (response == null) {
+                    orderedResponses.add(JsonRpcResponse.error(request.getId(), INTERNAL_ERROR, "No response from node"));
+                    continue;
+                }
+                storeResponse(request, response);
+                orderedResponses.add(response);
+            }
+            return orderedResponses;
+        } finally {
+            // Anything that was cached is stored by now
+            for (final JsonRpcRequest request : requests) {
+                final String key = getCacheKey(request);
+                if (key != null) this.inFlightCalls.remove(key);
+            }
+        }
+    }
+
+    private List<JsonRpcResponse> post(final List<JsonRpcRequest> batch) throws IOException {
+        if (batch.size() == 1) {
+            final String response = this.transport.post(this.requestAdapter.toJson(batch.get(0)));
+            return Collections.singletonList(this.responseAdapter.fromJson(response));
+        }
+        final String responses = this.transport.post(this.requestsAdapter.toJson(batch));
+        return this.responsesAdapter.fromJson(responses);
+    }
+
+    private synchronized JsonRpcResponse getCachedResponse(final String method, final String key) {
+        if (IMMUTABLE_METHODS.contains(method)) {
+            return this.immutableResults.get(key);
+        }
+
+        final BlockScopedResult blockScopedResult = this.blockScopedResults.get(key);
+        if (blockScopedResult == null) return null;
+        final long maxAge = BLOCK_NUMBER.equals(method) ? BLOCK_NUMBER_MAX_AGE_MS : BLOCK_TIME_MS;
+        if (System.currentTimeMillis() - blockScopedResult.storedAt > maxAge) {
+            this.blockScopedResults.remove(key);
+            return null;
+        }
+        return blockScopedResult.response;
+    }
+
+    private synchronized void storeResponse(final JsonRpcRequest request, final JsonRpcResponse response) {
+        final String method = request.getMethod();
+        if (STATE_CHANGING_METHODS.contains(method)) {
+            // Balances and nonces are about to change
+            this.blockScopedResults.clear();
+            return;
+        }
+
+        final String key = getCacheKey(request);
+        if (key == null || response.hasError()) return;
+
+        if (BLOCK_NUMBER.equals(method)) {
+            updateLatestBlockNumber(response.getResult());
+        }
+
+        if (IMMUTABLE_METHODS.contains(method)) {
+            // Unknown transactions and receipts that are still pending will show up later
+            if (isFinal(method, response.getResult())) this.immutableResults.put(key, response);
+        } else {
+            this.blockScopedResults.put(key, new BlockScopedResult(response));
+        }
+    }
+
+    private static boolean isFinal(final String method, final Object result) {
+        if (result == null) return false;
+        if (!TRANSACTION_METHODS.contains(method)) return true;
+        return result instanceof Map && ((Map<?, ?>) result).get("blockHash") != null;
+    }
+
+    private void updateLatestBlockNumber(final Object blockNumber) {
+        if (blockNumber == null || blockNumber.equals(this.latestBlockNumber)) return;
+        if (this.latestBlockNumber != null) this.blockScopedResults.clear();
+        this.latestBlockNumber = blockNumber;
+    }
+
+    // Returns null for calls that shouldn't be cached or coalesced
+    private String getCacheKey(final JsonRpcRequest request) {
+        final String method = request.getMethod();
+        if (method == null) return null;
+        if (!IMMUTABLE_METHODS.contains(method) && !BLOCK_SCOPED_METHODS.contains(method)) return null;
+
+        final List<Object> params = request.getParams() == null ? Collections.emptyList() : request.getParams();
+        if (params.contains("pending")) return null;
+        return method + ":" + this.paramsAdapter.toJson(params);
+    }
+
+    // Moshi reads all JSON numbers as doubles, write whole numbers back without a fraction
+    private static Object normaliseId(final Object id) {
+        if (id instanceof Double && (Double) id == Math.rint((Double) id)) {
+            return ((Double) id).longValue();
+        }
+        return id;
+    }
+
+    private static String postToNode(final String rpcUrl, final String body) throws IOException {
+        final Request request = new Request.Builder()
+                .url(rpcUrl)
+                .post(RequestBody.create(JSON, body))
+                .build();
+
+        final Response response = SharedHttpClient.get().newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+
+    private static class BlockScopedResult {
+        private final JsonRpcResponse response;
+        private final long storedAt;
+
+        private BlockScopedResult(final JsonRpcResponse response) {
+            this.response = response;
+            this.storedAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -43,4 +43,9 @@ import android.webkit.JavascriptInterface;
     public void signTransaction(final String id, final String unsignedTransaction) {
         this.listener.signTransaction(id, unsignedTransaction);
     }
+
+    @JavascriptInterface
+    public void sendRpc(final String id, final String payload) {
+        this.listener.sendRpc(id, payload);
+    }
 }
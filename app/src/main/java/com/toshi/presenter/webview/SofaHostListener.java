@@ -21,4 +21,5 @@ package com.toshi.presenter.webview;
     void getAccounts(String id);
     void approveTransaction(String id, String unsignedTransaction);
     void signTransaction(String id, String unsignedTransaction);
+    void sendRpc(String id, String payload);
 }
@@ -33,6 +33,7 @@ import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.presenter.webview.model.ApproveTransactionCallback;
 import com.toshi.presenter.webview.model.GetAccountsCallback;
 import com.toshi.presenter.webview.model.RejectTransactionCallback;
+import com.toshi.presenter.webview.model.RpcCallback;
 import com.toshi.presenter.webview.model.SignTransactionCallback;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
@@ -40,6 +41,8 @@ import com.toshi.view.fragment.DialogFragment.PaymentConfirmationDialog;
 
 import java.io.IOException;
 
+import rx.schedulers.Schedulers;
+
 /* package */ class SofaHostWrapper implements SofaHostListener {
 
     private final AppCompatActivity activity;
@@ -113,6 +116,23 @@ import java.io.IOException;
                 .setOnPaymentConfirmationCanceledListener(this::handleAcceptedCanceled);
     }
 
+    public void sendRpc(final String id, final String payload) {
+        JsonRpcProxy
+                .get()
+                .send(payload)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        response -> doCallBack(id, new RpcCallback().setResult(response).toJsonEncodedString()),
+                        throwable -> handleRpcError(id, throwable)
+                );
+    }
+
+    private void handleRpcError(final String id, final Throwable throwable) {
+        LogUtil.exception(getClass(), "Error while sending rpc request", throwable);
+        final String message = throwable.getMessage() == null ? throwable.toString() : throwable.getMessage();
+        doCallBack(id, new RpcCallback().setError(message).toJsonEncodedString());
+    }
+
     private void handleApprovedClicked(final Bundle bundle) {
         final String callbackId = bundle.getString(PaymentConfirmationDialog.CALLBACK_ID);
         final String unsignedTransaction = bundle.getString(PaymentConfirmationDialog.UNSIGNED_TRANSACTION);
@@ -19,32 +19,46 @@ package com.toshi.presenter.webview;
 
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RawRes;
+import android.webkit.WebResourceResponse;
 
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.Request;
-import com.squareup.okhttp.Response;
 import com.toshi.R;
+import com.toshi.manager.network.SharedHttpClient;
+import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 import com.toshi.view.custom.listener.OnLoadListener;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-
+import java.nio.charset.Charset;
+
+import okhttp3.Cache;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import rx.Completable;
-import rx.Single;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.subscriptions.CompositeSubscription;
 
 /* package */ class SofaInjector {
 
-    private final OkHttpClient client;
+    private static final long MAX_PAGE_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Shared by all dapp browsers so pages are served from one HTTP cache
+    private static OkHttpClient pageClient;
+    private static byte[] sofaScript;
+
     private final CompositeSubscription subscriptions;
     private final OnLoadListener listener;
-
-    private String sofaScript;
+    private String expectedPageUrl;
 
     /**
      * Injects SOFA script into valid pages
@@ -53,7 +67,6 @@ import rx.subscriptions.CompositeSubscription;
      */
     /* package */ SofaInjector(@NonNull final OnLoadListener listener) {
         this.listener = listener;
-        this.client = new OkHttpClient();
         this.subscriptions = new CompositeSubscription();
         asyncLoadSofaScript();
     }
@@ -69,73 +82,96 @@ import rx.subscriptions.CompositeSubscription;
         this.subscriptions.add(sub);
     }
 
-    /* package */ Single<SofaInjectResponse> loadUrl(final String url) {
-        return Single.fromCallable(() -> loadAndInjectSofa(url));
+    // Marks url as a page that should have SOFA injected the next time the WebView requests it
+    /* package */ synchronized void expectPage(final String url) {
+        this.expectedPageUrl = url;
+    }
+
+    /* package */ synchronized boolean isExpectedPage(final String url) {
+        return url != null && url.equals(this.expectedPageUrl);
+    }
+
+    // Called by the WebView on a background thread. The page is streamed to the WebView
+    // as it arrives, returns null to let the WebView load the page itself.
+    /* package */ @Nullable WebResourceResponse interceptPage(final String url) {
+        synchronized (this) {
+            if (url.equals(this.expectedPageUrl)) this.expectedPageUrl = null;
+        }
+
+        try {
+            return loadAndInjectSofa(url);
+        } catch (final IOException | IllegalArgumentException ex) {
+            LogUtil.exception(getClass(), "Unable to inject SOFA into " + url, ex);
+            return null;
+        }
     }
 
-    private SofaInjectResponse loadAndInjectSofa(final String url) throws IOException {
+    private WebResourceResponse loadAndInjectSofa(final String url) throws IOException {
         final Request request = new Request.Builder()
                 .url(url)
                 .build();
 
-        final Response response = this.client.newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+        final Response response = getPageClient().newCall(request).execute();
+        final ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            response.close();
+            throw new IOException("Unexpected code " + response);
+        }
 
-        final String body = response.body().string();
-        final String injectedBody = injectSofaScript(body);
+        final MediaType contentType = body.contentType();
+        final String mimeType = contentType == null ? "text/html" : contentType.type() + "/" + contentType.subtype();
+        final Charset charset = contentType == null ? UTF_8 : contentType.charset(UTF_8);
+        final InputStream injectingStream = new SofaScriptInjectingStream(body.source(), sofaScript);
+        return new WebResourceResponse(mimeType, charset.name(), injectingStream);
+    }
 
-        return new SofaInjectResponse.Builder()
-                .setAddress(url)
-                .setData(injectedBody)
-                .setMimeType(response.header("content-type", "text/plain"))
-                .setEncoding(response.header("content-encoding", "utf-8"))
-                .build();
+    private static synchronized OkHttpClient getPageClient() {
+        if (pageClient == null) {
+            final File cacheDir = new File(BaseApplication.get().getCacheDir(), "dappCache");
+            pageClient = SharedHttpClient
+                    .newBuilder()
+                    .cache(new Cache(cacheDir, MAX_PAGE_CACHE_SIZE))
+                    .build();
+        }
+        return pageClient;
     }
 
-    private Completable loadSofaScript() {
-        final StringBuilder sb = new StringBuilder();
-        final InputStream stream = BaseApplication.get().getResources().openRawResource(R.raw.sofa);
-        final BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+    private static synchronized Completable loadSofaScript() {
+        if (sofaScript != null) return Completable.complete();
 
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<script>");
         sb.append(getRcpUrlInjection());
 
         try {
-            String str;
-            while ((str = in.readLine()) != null) {
-                sb.append(str);
-                sb.append("\n");
-            }
+            appendRawResource(R.raw.sofa, sb);
+            appendRawResource(R.raw.sofa_rpc, sb);
         } catch (final IOException ex) {
             return Completable.error(ex);
-        } finally {
-            try {
-                in.close();
-            } catch (final IOException ex) {
-                // Return in a finally statement. We failed anyway.
-                return Completable.error(ex);
-            }
         }
 
-        this.sofaScript = "<script>" + sb.toString() + "</script>\n";
+        sb.append("</script>\n");
+        sofaScript = sb.toString().getBytes(UTF_8);
 
         return Completable.complete();
     }
 
-    private String getRcpUrlInjection() {
-        return String.format("window.SOFA = {config: {rcpUrl: \"%s\"}};", BaseApplication.get().getResources().getString(R.string.rcp_url));
-    }
-
-    private String injectSofaScript(final String body) {
-        final int position = getInjectionPosition(body);
-        if (position == -1) return body;
-        final String beforeTag = body.substring(0, position);
-        final String afterTab = body.substring(position);
-        return beforeTag + this.sofaScript + afterTab;
+    private static void appendRawResource(final @RawRes int resourceId, final StringBuilder sb) throws IOException {
+        final InputStream stream = BaseApplication.get().getResources().openRawResource(resourceId);
+        final BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+        try {
+            String str;
+            while ((str = in.readLine()) != null) {
+                sb.append(str);
+                sb.append("\n");
+            }
+        } finally {
+            in.close();
+        }
     }
 
-    private int getInjectionPosition(final String body) {
-        final String htmlTag = "<script";
-        return body.toLowerCase().indexOf(htmlTag);
+    private static String getRcpUrlInjection() {
+        return String.format("window.SOFA = {config: {rcpUrl: \"%s\"}};", BaseApplication.get().getResources().getString(R.string.rcp_url));
     }
 
     /* package */ void destroy() {
@@ -0,0 +1,130 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+// Passes a page through unchanged, except that the script is written once
+// right before the first <script tag (matched case insensitively).
+// Nothing is injected into pages without a <script tag.
+/* package */ class SofaScriptInjectingStream extends InputStream {
+
+    private static final byte[] SCRIPT_TAG = {'<', 's', 'c', 'r', 'i', 'p', 't'};
+    private static final int CHUNK_SIZE = 8192;
+
+    private final BufferedSource source;
+    private final byte[] script;
+    private final byte[] chunk;
+    private final byte[] partialTag;
+    private final Buffer output;
+    private int matched;
+    private boolean isInjected;
+    private boolean isExhausted;
+
+    /* package */ SofaScriptInjectingStream(final BufferedSource source, final byte[] script) {
+        this.source = source;
+        this.script = script;
+        this.chunk = new byte[CHUNK_SIZE];
+        this.partialTag = new byte[SCRIPT_TAG.length];
+        this.output = new Buffer();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillOutput()) return -1;
+        return this.output.readByte() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] sink, final int offset, final int byteCount) throws IOException {
+        if (byteCount == 0) return 0;
+        if (!fillOutput()) return -1;
+        return this.output.read(sink, offset, byteCount);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(this.output.size(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.output.clear();
+        this.source.close();
+    }
+
+    private boolean fillOutput() throws IOException {
+        while (this.output.size() == 0) {
+            if (this.isExhausted) return false;
+            if (this.isInjected) {
+                if (this.source.read(this.output, CHUNK_SIZE) == -1) this.isExhausted = true;
+            } else {
+                readAndScan();
+            }
+        }
+        return true;
+    }
+
+    private void readAndScan() throws IOException {
+        final int count = this.source.read(this.chunk, 0, this.chunk.length);
+        if (count == -1) {
+            // The page ended halfway through something that looked like a tag
+            this.output.write(this.partialTag, 0, this.matched);
+            this.matched = 0;
+            this.isExhausted = true;
+            return;
+        }
+
+        int runStart = 0;
+        for (int i = 0; i < count; i++) {
+            final byte current = this.chunk[i];
+            if (toLowerCase(current) == SCRIPT_TAG[this.matched]) {
+                if (this.matched == 0) this.output.write(this.chunk, runStart, i - runStart);
+                this.partialTag[this.matched++] = current;
+                runStart = i + 1;
+
+                if (this.matched == SCRIPT_TAG.length) {
+                    this.output.write(this.script);
+                    this.output.write(this.partialTag, 0, this.matched);
+                    this.output.write(this.chunk, runStart, count - runStart);
+                    this.matched = 0;
+                    this.isInjected = true;
+                    return;
+                }
+            } else if (this.matched > 0) {
+                this.output.write(this.partialTag, 0, this.matched);
+                this.matched = 0;
+                runStart = i;
+                if (current == SCRIPT_TAG[0]) {
+                    this.partialTag[this.matched++] = current;
+                    runStart = i + 1;
+                }
+            }
+        }
+        this.output.write(this.chunk, runStart, count - runStart);
+    }
+
+    private static byte toLowerCase(final byte value) {
+        return value >= 'A' && value <= 'Z' ? (byte) (value + ('a' - 'A')) : value;
+    }
+}
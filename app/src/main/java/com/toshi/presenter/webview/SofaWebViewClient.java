@@ -18,9 +18,11 @@
 package com.toshi.presenter.webview;
 
 
+import android.annotation.TargetApi;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
@@ -29,9 +31,12 @@ import com.toshi.view.custom.listener.OnLoadListener;
 /* package */ class SofaWebViewClient extends WebViewClient {
 
     private final OnLoadListener listener;
+    private final SofaInjector sofaInjector;
 
-    /* package */ SofaWebViewClient(@NonNull final OnLoadListener listener) {
+    /* package */ SofaWebViewClient(@NonNull final OnLoadListener listener,
+                                    @NonNull final SofaInjector sofaInjector) {
         this.listener = listener;
+        this.sofaInjector = sofaInjector;
     }
 
     @Override
@@ -55,6 +60,20 @@ import com.toshi.view.custom.listener.OnLoadListener;
         return true;
     }
 
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public WebResourceResponse shouldInterceptRequest(final WebView view, final WebResourceRequest request) {
+        if (!request.isForMainFrame() || !"GET".equals(request.getMethod())) return null;
+        return this.sofaInjector.interceptPage(request.getUrl().toString());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public WebResourceResponse shouldInterceptRequest(final WebView view, final String url) {
+        if (!this.sofaInjector.isExpectedPage(url)) return null;
+        return this.sofaInjector.interceptPage(url);
+    }
+
     @Override
     public void onPageCommitVisible(WebView view, String url) {
         this.listener.onLoaded();
@@ -35,9 +35,6 @@ import com.toshi.view.custom.listener.OnLoadListener;
 
 import java.net.URI;
 
-import rx.Subscription;
-import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 public class WebViewPresenter implements Presenter<WebViewActivity> {
@@ -79,8 +76,8 @@ public class WebViewPresenter implements Presenter<WebViewActivity> {
     }
 
     private void initInjectsAndEmbeds() {
-        this.webClient = new SofaWebViewClient(this.loadedListener);
         this.sofaInjector = new SofaInjector(this.loadedListener);
+        this.webClient = new SofaWebViewClient(this.loadedListener, this.sofaInjector);
         this.sofaHostWrapper = new SofaHostWrapper(this.activity, this.activity.getBinding().webview);
     }
 
@@ -151,27 +148,12 @@ public class WebViewPresenter implements Presenter<WebViewActivity> {
                 onError(new Throwable("SofaInjector is null"));
                 return;
             }
-            final Subscription sub = sofaInjector.loadUrl(address)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(
-                            this::handleWebResourceResponse,
-                            this::onError
-                    );
-
-            subscriptions.add(sub);
-        }
-
-        private void handleWebResourceResponse(final SofaInjectResponse response) {
             if (activity == null) return;
+            // The page is fetched and injected with SOFA when the WebView requests it
+            sofaInjector.expectPage(address);
             activity.getBinding()
                     .webview
-                    .loadDataWithBaseURL(
-                        response.getAddress(),
-                        response.getData(),
-                        response.getMimeType(),
-                        response.getEncoding(),
-                        null);
+                    .loadUrl(address);
         }
 
         @Override
@@ -0,0 +1,54 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview.model;
+
+
+import java.util.List;
+
+public class JsonRpcRequest {
+
+    private String jsonrpc;
+    private Object id;
+    private String method;
+    private List<Object> params;
+
+    public JsonRpcRequest() {}
+
+    public JsonRpcRequest(final Object id, final String method, final List<Object> params) {
+        this.jsonrpc = "2.0";
+        this.id = id;
+        this.method = method;
+        this.params = params;
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public List<Object> getParams() {
+        return params;
+    }
+
+    public JsonRpcRequest withId(final Object id) {
+        return new JsonRpcRequest(id, this.method, this.params);
+    }
+}
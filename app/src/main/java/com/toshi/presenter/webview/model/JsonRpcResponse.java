@@ -0,0 +1,67 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview.model;
+
+
+public class JsonRpcResponse {
+
+    private String jsonrpc;
+    private Object id;
+    private Object result;
+    private Object error;
+
+    public JsonRpcResponse() {}
+
+    private JsonRpcResponse(final Object id, final Object result, final Object error) {
+        this.jsonrpc = "2.0";
+        this.id = id;
+        this.result = result;
+        this.error = error;
+    }
+
+    public static JsonRpcResponse error(final Object id, final int code, final String message) {
+        final JsonRpcError error = new JsonRpcError(code, message);
+        return new JsonRpcResponse(id, null, error);
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    public JsonRpcResponse withId(final Object id) {
+        return new JsonRpcResponse(id, this.result, this.error);
+    }
+
+    private static class JsonRpcError {
+        private int code;
+        private String message;
+
+        private JsonRpcError(final int code, final String message) {
+            this.code = code;
+            this.message = message;
+        }
+    }
+}
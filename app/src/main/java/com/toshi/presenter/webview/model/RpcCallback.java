@@ -0,0 +1,62 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview.model;
+
+
+public class RpcCallback {
+
+    // Valid in JSON strings but not in JavaScript string literals
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private String result;
+    private String error;
+
+    // The raw JSON-RPC response, a single object or a batch array
+    public RpcCallback setResult(final String result) {
+        this.result = result;
+        return this;
+    }
+
+    public RpcCallback setError(final String error) {
+        this.error = error;
+        return this;
+    }
+
+    public String toJsonEncodedString() {
+        if (error != null) {
+            // Escaped once for the JSON string and once more for the JavaScript literal around it
+            return String.format(
+                    "{\\\"error\\\":\\\"%s\\\"}",
+                    escape(escape(error.replace('\n', ' ')))
+            );
+        }
+        return String.format(
+                "{\\\"result\\\":%s}",
+                escape(result)
+        );
+    }
+
+    private String escape(final String json) {
+        return json
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace(String.valueOf(LINE_SEPARATOR), "\\u2028")
+                .replace(String.valueOf(PARAGRAPH_SEPARATOR), "\\u2029");
+    }
+}
@@ -53,14 +53,18 @@ import com.toshi.view.notification.ChatNotificationManager;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeoutException;
 
 import rx.Completable;
 import rx.Single;
 
 public class GcmMessageReceiver extends GcmListenerService {
 
+    // GCM allows roughly ten seconds to handle a push
+    private static final long DRAIN_BUDGET_MS = 8000;
+    private static final long DRAIN_IDLE_TIMEOUT_MS = 500;
+
     @Override
     public void onMessageReceived(final String from, final Bundle data) {
         if (SharedPrefsUtil.hasSignedOut()) return;
@@ -89,7 +93,7 @@ public class GcmMessageReceiver extends GcmListenerService {
             LogUtil.i(getClass(), "Incoming PN: " + messageBody);
 
             if (messageBody == null) {
-                tryShowSignalMessage();
+                tryShowSignalMessages();
                 return;
             }
 
@@ -99,7 +103,7 @@ public class GcmMessageReceiver extends GcmListenerService {
                 final Payment payment = SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
                 checkIfUserIsBlocked(payment);
             } else {
-                tryShowSignalMessage();
+                tryShowSignalMessages();
             }
 
         } catch (final Exception ex) {
@@ -160,22 +164,14 @@ public class GcmMessageReceiver extends GcmListenerService {
         LogUtil.exception(getClass(), "Invalid payment", throwable);
     }
 
-    private void tryShowSignalMessage() {
-        final SofaMessage signalMessage;
-        try {
-            signalMessage = BaseApplication
+    private void tryShowSignalMessages() {
+        final List<SofaMessage> signalMessages = BaseApplication
                 .get()
                 .getSofaMessageManager()
-                .fetchLatestMessage();
-        } catch (final TimeoutException e) {
-            LogUtil.i(getClass(), "Fetched all new messages");
-            return;
-        }
-
-        ChatNotificationManager.showNotification(signalMessage);
-        // There may be more messages.
-        tryShowSignalMessage();
+                .drainPendingMessages(DRAIN_BUDGET_MS, DRAIN_IDLE_TIMEOUT_MS);
 
+        LogUtil.i(getClass(), "Fetched " + signalMessages.size() + " new messages");
+        ChatNotificationManager.showNotifications(signalMessages);
     }
 
     private void updatePayment(final Payment payment) {
@@ -22,4 +22,6 @@ public class FileNames {
     public static final String USER_PREFS = "usm";
     public static final String BALANCE_PREFS = "bm";
     public static final String WALLET_PREFS = "wa";
+    public static final String EXCHANGE_RATE_PREFS = "er";
+    public static final String AVATAR_PREFS = "av";
 }
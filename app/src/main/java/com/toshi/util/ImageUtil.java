@@ -27,7 +27,7 @@ import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.StringSignature;
 import com.google.common.io.Files;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
@@ -36,8 +36,8 @@ import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.toshi.R;
 import com.toshi.exception.QrCodeException;
+import com.toshi.manager.network.image.AvatarCache;
 import com.toshi.manager.network.image.CachedGlideUrl;
-import com.toshi.manager.network.image.ForceLoadGlideUrl;
 import com.toshi.view.BaseApplication;
 
 import java.io.ByteArrayOutputStream;
@@ -60,39 +60,38 @@ public class ImageUtil {
     public static void load(final String url, final ImageView imageView) {
         if (url == null || imageView == null) return;
 
-        Single
-            .fromCallable(() -> loadFromNetwork(url, imageView))
-            .subscribeOn(Schedulers.io())
+        imageView.setTag(R.id.avatar_url, url);
+        renderAvatar(url, imageView);
+        AvatarCache
+            .get()
+            .revalidate(url)
             .observeOn(AndroidSchedulers.mainThread())
-            .doOnSubscribe(() -> renderFromCache(url, imageView))
             .subscribe(
-                    __ -> {},
-                    throwable -> LogUtil.exception(ImageUtil.class, throwable)
+                    hasChanged -> rerenderIfChanged(hasChanged, url, imageView),
+                    throwable -> LogUtil.i(ImageUtil.class, "Unable to revalidate avatar. " + throwable)
             );
     }
 
-    @Nullable
-    public static Target loadFromNetwork(final String url, final ImageView imageView) {
-        try {
-            return Glide
-                    .with(imageView.getContext())
-                    .load(new ForceLoadGlideUrl(url))
-                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                    .skipMemoryCache(true)
-                    .into(imageView);
-        } catch (final IllegalArgumentException ex) {
-            LogUtil.i(ImageUtil.class, "Tried to render into a now destroyed view.");
-            return null;
-        }
+    // Skips the revalidation window, use when the avatar is known to have changed
+    public static void forceLoad(final String url, final ImageView imageView) {
+        if (url == null || imageView == null) return;
+        AvatarCache.get().expire(url);
+        load(url, imageView);
+    }
+
+    private static void rerenderIfChanged(final boolean hasChanged, final String url, final ImageView imageView) {
+        // The view may have been recycled for a different avatar while revalidating
+        if (!hasChanged || !url.equals(imageView.getTag(R.id.avatar_url))) return;
+        renderAvatar(url, imageView);
     }
 
-    private static void renderFromCache(final String url, final ImageView imageView) {
+    private static void renderAvatar(final String url, final ImageView imageView) {
         try {
             Glide
                 .with(imageView.getContext())
                 .load(new CachedGlideUrl(url))
-                .diskCacheStrategy(DiskCacheStrategy.NONE)
-                .skipMemoryCache(true)
+                .signature(new StringSignature(AvatarCache.get().getSignature(url)))
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
                 .into(imageView);
         } catch (final IllegalArgumentException ex) {
             LogUtil.i(ImageUtil.class, "Tried to render into a now destroyed view.");
@@ -190,6 +189,7 @@ public class ImageUtil {
     }
 
     public static void clear() {
+        AvatarCache.get().clear();
         Completable.fromAction(() -> {
             Glide
                     .get(BaseApplication.get())
@@ -0,0 +1,105 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.util;
+
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs tasks on a shared executor, one at a time per key and in the order they were
+// submitted. Tasks with different keys run concurrently, bounded by the executor.
+public class KeyedSerialExecutor {
+
+    private final Executor executor;
+    private final Map<String, ArrayDeque<Runnable>> queuedTasks;
+    private final AtomicInteger pendingTaskCount;
+    // Guarded by queuedTasks
+    private boolean isShutdown;
+
+    public KeyedSerialExecutor(final Executor executor) {
+        this.executor = executor;
+        this.queuedTasks = new HashMap<>();
+        this.pendingTaskCount = new AtomicInteger(0);
+    }
+
+    public void execute(final String key, final Runnable task) {
+        synchronized (this.queuedTasks) {
+            if (this.isShutdown) return;
+            this.pendingTaskCount.incrementAndGet();
+            final ArrayDeque<Runnable> queue = this.queuedTasks.get(key);
+            if (queue != null) {
+                // A task for this key is already running; it will pick this one up.
+                queue.add(task);
+                return;
+            }
+            this.queuedTasks.put(key, new ArrayDeque<>());
+        }
+        this.executor.execute(() -> runAndContinue(key, task));
+    }
+
+    private void runAndContinue(final String key, final Runnable task) {
+        try {
+            task.run();
+        } finally {
+            this.pendingTaskCount.decrementAndGet();
+            runNext(key);
+        }
+    }
+
+    private void runNext(final String key) {
+        final Runnable next;
+        synchronized (this.queuedTasks) {
+            final ArrayDeque<Runnable> queue = this.queuedTasks.get(key);
+            // Dropped by shutdown
+            if (queue == null) return;
+            next = queue.poll();
+            if (next == null) {
+                this.queuedTasks.remove(key);
+                return;
+            }
+        }
+        this.executor.execute(() -> runAndContinue(key, next));
+    }
+
+    // Drops all queued tasks and ignores any submitted from now on. Tasks that are
+    // already running are left to the underlying executor.
+    public void shutdown() {
+        synchronized (this.queuedTasks) {
+            this.isShutdown = true;
+            for (final ArrayDeque<Runnable> queue : this.queuedTasks.values()) {
+                this.pendingTaskCount.addAndGet(-queue.size());
+            }
+            this.queuedTasks.clear();
+        }
+    }
+
+    // Number of tasks submitted that haven't finished yet, including running ones
+    public int getPendingTaskCount() {
+        return this.pendingTaskCount.get();
+    }
+
+    // Number of keys with a running or queued task
+    public int getActiveKeyCount() {
+        synchronized (this.queuedTasks) {
+            return this.queuedTasks.size();
+        }
+    }
+}
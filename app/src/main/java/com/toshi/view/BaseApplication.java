@@ -49,7 +49,7 @@ public final class BaseApplication extends MultiDexApplication {
         if (Thread.currentThread().getId() == 1) {
             LogUtil.e(getClass(), "DB call done on Main Thread. Move this to a background thread.");
         }
-        return this.toshiManager.getRealm().toBlocking().value();
+        return this.toshiManager.openRealm();
     }
 
     @Override
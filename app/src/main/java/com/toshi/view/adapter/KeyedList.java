@@ -0,0 +1,208 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.view.adapter;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rx.functions.Func1;
+
+// An adapter backing list with constant time lookups by key.
+// The index is maintained on appends and rebuilt lazily after any other structural change.
+/* package */ final class KeyedList<T> {
+
+    /* package */ interface ContentComparator<T> {
+        boolean areContentsTheSame(List<T> oldItems, int oldPosition, List<T> newItems, int newPosition);
+    }
+
+    private final Func1<T, String> keyFunction;
+    private final List<T> items;
+    private final Map<String, Integer> index;
+    private boolean isIndexValid;
+    private int generation;
+
+    /* package */ KeyedList(final Func1<T, String> keyFunction) {
+        this.keyFunction = keyFunction;
+        this.items = new ArrayList<>();
+        this.index = new HashMap<>();
+        this.isIndexValid = true;
+    }
+
+    /* package */ T get(final int position) {
+        return this.items.get(position);
+    }
+
+    /* package */ int size() {
+        return this.items.size();
+    }
+
+    /* package */ int indexOf(final T item) {
+        if (item == null) return -1;
+        return indexOfKey(this.keyFunction.call(item));
+    }
+
+    /* package */ int indexOfKey(final String key) {
+        if (!this.isIndexValid) rebuildIndex();
+        final Integer position = this.index.get(key);
+        return position == null ? -1 : position;
+    }
+
+    /* package */ void add(final T item) {
+        this.items.add(item);
+        if (this.isIndexValid) this.index.put(this.keyFunction.call(item), this.items.size() - 1);
+        this.generation++;
+    }
+
+    /* package */ void add(final int position, final T item) {
+        if (position == this.items.size()) {
+            add(item);
+            return;
+        }
+        this.items.add(position, item);
+        invalidate();
+    }
+
+    /* package */ void addAll(final int position, final List<T> newItems) {
+        this.items.addAll(position, newItems);
+        invalidate();
+    }
+
+    /* package */ void set(final int position, final T item) {
+        this.items.set(position, item);
+        this.generation++;
+    }
+
+    /* package */ T remove(final int position) {
+        final T removed = this.items.remove(position);
+        invalidate();
+        return removed;
+    }
+
+    /* package */ void move(final int fromPosition, final int toPosition) {
+        this.items.add(toPosition, this.items.remove(fromPosition));
+        invalidate();
+    }
+
+    /* package */ void replaceAll(final List<T> newItems) {
+        this.items.clear();
+        this.items.addAll(newItems);
+        invalidate();
+    }
+
+    /* package */ void clear() {
+        replaceAll(new ArrayList<>(0));
+    }
+
+    // A read-only view of the current items
+    /* package */ List<T> asList() {
+        return Collections.unmodifiableList(this.items);
+    }
+
+    /* package */ List<T> snapshot() {
+        return new ArrayList<>(this.items);
+    }
+
+    // Changes with every mutation, used to detect whether a snapshot is still current.
+    /* package */ int getGeneration() {
+        return this.generation;
+    }
+
+    // Safe to call from any thread as long as the lists passed in aren't modified.
+    /* package */ DiffUtil.DiffResult calculateDiff(final List<T> oldItems,
+                                                   final List<T> newItems,
+                                                   final ContentComparator<T> comparator) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(final int oldPosition, final int newPosition) {
+                return keyFunction.call(oldItems.get(oldPosition)).equals(keyFunction.call(newItems.get(newPosition)));
+            }
+
+            @Override
+            public boolean areContentsTheSame(final int oldPosition, final int newPosition) {
+                return comparator.areContentsTheSame(oldItems, oldPosition, newItems, newPosition);
+            }
+        });
+    }
+
+    // Returns newItems with the changes made to this list since oldItems was taken applied on top,
+    // so a list computed from a stale snapshot doesn't undo them. Items removed since are left out,
+    // replaced items win over their stale version and added items keep their current position.
+    /* package */ List<T> mergeChangesSince(final List<T> oldItems, final List<T> newItems) {
+        final Map<String, T> oldItemsByKey = mapByKey(oldItems);
+        final Map<String, T> currentItemsByKey = mapByKey(this.items);
+        final List<T> mergedItems = new ArrayList<>(newItems.size());
+        final Set<String> mergedKeys = new HashSet<>(newItems.size());
+
+        for (final T newItem : newItems) {
+            final String key = this.keyFunction.call(newItem);
+            final T currentItem = currentItemsByKey.get(key);
+            final boolean isRemoved = currentItem == null && oldItemsByKey.containsKey(key);
+            if (isRemoved) continue;
+            final boolean isReplaced = currentItem != null && currentItem != oldItemsByKey.get(key);
+            mergedItems.add(isReplaced ? currentItem : newItem);
+            mergedKeys.add(key);
+        }
+
+        for (int i = 0; i < this.items.size(); i++) {
+            final T currentItem = this.items.get(i);
+            final String key = this.keyFunction.call(currentItem);
+            final boolean isUnchanged = currentItem == oldItemsByKey.get(key);
+            if (isUnchanged || mergedKeys.contains(key)) continue;
+            mergedItems.add(Math.min(i, mergedItems.size()), currentItem);
+        }
+        return mergedItems;
+    }
+
+    private Map<String, T> mapByKey(final List<T> items) {
+        final Map<String, T> itemsByKey = new HashMap<>(items.size());
+        for (final T item : items) {
+            itemsByKey.put(this.keyFunction.call(item), item);
+        }
+        return itemsByKey;
+    }
+
+    private void invalidate() {
+        this.isIndexValid = false;
+        this.index.clear();
+        this.generation++;
+    }
+
+    private void rebuildIndex() {
+        for (int i = 0; i < this.items.size(); i++) {
+            this.index.put(this.keyFunction.call(this.items.get(i)), i);
+        }
+        this.isIndexValid = true;
+    }
+}
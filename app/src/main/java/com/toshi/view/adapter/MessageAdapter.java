@@ -18,6 +18,7 @@
 package com.toshi.view.adapter;
 
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -30,8 +31,9 @@ import com.toshi.model.local.User;
 import com.toshi.model.sofa.Message;
 import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.PaymentRequest;
-import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayload;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.model.sofa.SofaType;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
@@ -45,9 +47,14 @@ import com.toshi.view.adapter.viewholder.TimestampMessageViewHolder;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
+import rx.Single;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
 import static com.toshi.model.local.ChainPosition.FIRST;
 import static com.toshi.model.local.ChainPosition.LAST;
 import static com.toshi.model.local.ChainPosition.MIDDLE;
@@ -58,7 +65,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
     private final static int SENDER_MASK = 0x1000;
 
-    private final List<SofaMessage> sofaMessages;
+    private final KeyedList<SofaMessage> sofaMessages;
     private OnItemClickListener<SofaMessage> onPaymentRequestApproveListener;
     private OnItemClickListener<SofaMessage> onPaymentRequestRejectListener;
     private OnItemClickListener<String> onUsernameClickListener;
@@ -67,9 +74,11 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     private OnItemClickListener<SofaMessage> onResendListener;
     private OnItemClickListener<SofaMessage> onResendPaymentListener;
     private Recipient recipient;
+    private User localUser;
+    private Subscription diffSubscription;
 
     public MessageAdapter() {
-        this.sofaMessages = new ArrayList<>();
+        this.sofaMessages = new KeyedList<>(SofaMessage::getPrivateKey);
     }
 
     public final MessageAdapter addOnPaymentRequestApproveListener(final OnItemClickListener<SofaMessage> listener) {
@@ -107,11 +116,31 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         return this;
     }
 
-    public MessageAdapter setMessages(final List<SofaMessage> messages) {
-        final List<SofaMessage> messagesToAdd = messages == null
-                ? new ArrayList<>(0)
-                : messages;
-        addMessages(messagesToAdd);
+    // Replaces the current messages. When there is something on screen already the diff is calculated
+    // on a background thread, onApplied is called on the main thread once the adapter reflects the new list.
+    public MessageAdapter setMessages(final List<SofaMessage> messages, @Nullable final Action0 onApplied) {
+        final List<SofaMessage> visibleMessages = filterUserVisible(messages);
+        cancelPendingDiff();
+
+        if (this.sofaMessages.size() == 0 || visibleMessages.size() == 0) {
+            final int previousSize = this.sofaMessages.size();
+            this.sofaMessages.replaceAll(visibleMessages);
+            if (previousSize > 0) notifyItemRangeRemoved(0, previousSize);
+            if (visibleMessages.size() > 0) notifyItemRangeInserted(0, visibleMessages.size());
+            if (onApplied != null) onApplied.call();
+            return this;
+        }
+
+        final List<SofaMessage> oldMessages = this.sofaMessages.snapshot();
+        final int generation = this.sofaMessages.getGeneration();
+        this.diffSubscription =
+                Single.fromCallable(() -> this.sofaMessages.calculateDiff(oldMessages, visibleMessages, MessageAdapter::areContentsTheSame))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        diffResult -> applyDiff(diffResult, oldMessages, visibleMessages, generation, onApplied),
+                        throwable -> LogUtil.exception(getClass(), "Error while diffing messages", throwable)
+                );
         return this;
     }
 
@@ -120,13 +149,51 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         return this;
     }
 
-    private void addMessages(final Collection<SofaMessage> sofaMessages) {
-        this.sofaMessages.clear();
-        notifyDataSetChanged();
+    private void applyDiff(final DiffUtil.DiffResult diffResult,
+                           final List<SofaMessage> oldMessages,
+                           final List<SofaMessage> newMessages,
+                           final int generation,
+                           @Nullable final Action0 onApplied) {
+        if (generation != this.sofaMessages.getGeneration()) {
+            // The list changed while diffing, so the diff is redone with those changes kept
+            setMessages(this.sofaMessages.mergeChangesSince(oldMessages, newMessages), onApplied);
+            return;
+        }
+        this.sofaMessages.replaceAll(newMessages);
+        diffResult.dispatchUpdatesTo(this);
+        if (onApplied != null) onApplied.call();
+    }
 
-        for (SofaMessage sofaMessage : sofaMessages) {
-            addMessage(sofaMessage);
+    private void cancelPendingDiff() {
+        if (this.diffSubscription == null) return;
+        this.diffSubscription.unsubscribe();
+        this.diffSubscription = null;
+    }
+
+    private static List<SofaMessage> filterUserVisible(@Nullable final List<SofaMessage> messages) {
+        if (messages == null) return new ArrayList<>(0);
+        final List<SofaMessage> visibleMessages = new ArrayList<>(messages.size());
+        for (final SofaMessage sofaMessage : messages) {
+            if (sofaMessage != null && sofaMessage.isUserVisible()) visibleMessages.add(sofaMessage);
         }
+        return visibleMessages;
+    }
+
+    private static boolean areContentsTheSame(final List<SofaMessage> oldMessages,
+                                              final int oldPosition,
+                                              final List<SofaMessage> newMessages,
+                                              final int newPosition) {
+        final SofaMessage oldMessage = oldMessages.get(oldPosition);
+        final SofaMessage newMessage = newMessages.get(newPosition);
+        return oldMessage.getSendState() == newMessage.getSendState()
+                && isEqual(oldMessage.getPayload(), newMessage.getPayload())
+                && isEqual(oldMessage.getAttachmentFilePath(), newMessage.getAttachmentFilePath())
+                && (oldMessage.getErrorMessage() == null) == (newMessage.getErrorMessage() == null)
+                && getChainPosition(oldMessages, oldPosition) == getChainPosition(newMessages, newPosition);
+    }
+
+    private static boolean isEqual(@Nullable final String first, @Nullable final String second) {
+        return first == null ? second == null : first.equals(second);
     }
 
     private void addMessage(final SofaMessage sofaMessage) {
@@ -139,6 +206,20 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         }
     }
 
+    // Prepends a page of older messages, ordered oldest first.
+    public final void addOlderMessages(final List<SofaMessage> olderMessages) {
+        final List<SofaMessage> visibleMessages = filterUserVisible(olderMessages);
+        if (visibleMessages.size() == 0) return;
+
+        final boolean hadMessages = this.sofaMessages.size() > 0;
+        this.sofaMessages.addAll(0, visibleMessages);
+        notifyItemRangeInserted(0, visibleMessages.size());
+        if (hadMessages) {
+            // The previously first message may now be part of a chain.
+            notifyItemChanged(visibleMessages.size());
+        }
+    }
+
     public final void updateMessage(final SofaMessage sofaMessage) {
         if (sofaMessage == null || !sofaMessage.isUserVisible()) return;
         final int position = this.sofaMessages.indexOf(sofaMessage);
@@ -226,10 +307,10 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
             final int position) {
 
         final SofaMessage sofaMessage = this.sofaMessages.get(position);
-        final String payload = sofaMessage.getPayload();
-        if (payload == null) return;
+        if (sofaMessage.getPayloadWithHeaders() == null) return;
 
         try {
+            final SofaPayload payload = SofaPayloadCache.get().load(sofaMessage);
             renderChatMessageIntoViewHolder(holder, sofaMessage, payload, position);
         } catch (final IOException ex) {
             LogUtil.error(getClass(), "Unable to render view holder: " + ex);
@@ -239,8 +320,8 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     private void renderChatMessageIntoViewHolder(
             final RecyclerView.ViewHolder holder,
             final SofaMessage sofaMessage,
-            final String payload,
-            final int position) throws IOException {
+            final SofaPayload payload,
+            final int position) {
 
         final boolean isRemote = holder.getItemViewType() >= SENDER_MASK;
         final int messageType = isRemote ? holder.getItemViewType() ^ SENDER_MASK : holder.getItemViewType();
@@ -249,7 +330,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
             case SofaType.COMMAND_REQUEST:
             case SofaType.PLAIN_TEXT: {
                 final TextViewHolder vh = (TextViewHolder) holder;
-                final Message message = SofaAdapters.get().messageFrom(payload);
+                final Message message = payload.getMessage();
                 final @ChainPosition.Position int chainPosition = getChainPosition(position);
                 final boolean showAvatar = chainPosition == LAST || chainPosition == NONE;
 
@@ -291,7 +372,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
             case SofaType.PAYMENT: {
                 final PaymentViewHolder vh = (PaymentViewHolder) holder;
-                final Payment payment = SofaAdapters.get().paymentFrom(payload);
+                final Payment payment = payload.getPayment();
                 vh
                         .setPayment(payment)
                         .setAvatarUri(sofaMessage.getSenderAvatar())
@@ -304,7 +385,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
             case SofaType.PAYMENT_REQUEST: {
                 final PaymentRequestViewHolder vh = (PaymentRequestViewHolder) holder;
-                final PaymentRequest request = SofaAdapters.get().txRequestFrom(payload);
+                final PaymentRequest request = payload.getPaymentRequest();
                 if (this.recipient != null && this.recipient.isGroup()) {
                     // Todo - support group payment requests
                     LogUtil.i(getClass(), "Payment requests to groups currently not supported.");
@@ -330,9 +411,13 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     }
 
     private @ChainPosition.Position int getChainPosition(final int position) {
-        final SofaMessage currentSofaMessage = this.sofaMessages.get(position);
-        final SofaMessage previousSofaMessage = getMessageAtPos(position - 1);
-        final SofaMessage nextSofaMessage = getMessageAtPos(position + 1);
+        return getChainPosition(this.sofaMessages.asList(), position);
+    }
+
+    private static @ChainPosition.Position int getChainPosition(final List<SofaMessage> messages, final int position) {
+        final SofaMessage currentSofaMessage = messages.get(position);
+        final SofaMessage previousSofaMessage = getMessageAtPos(messages, position - 1);
+        final SofaMessage nextSofaMessage = getMessageAtPos(messages, position + 1);
         final boolean previousMessageSentByCurrent = previousSofaMessage != null && previousSofaMessage.isSentBy(currentSofaMessage.getSender());
         final boolean nextMessageSentByCurrent = nextSofaMessage != null && nextSofaMessage.isSentBy(currentSofaMessage.getSender());
 
@@ -342,12 +427,9 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         return LAST;
     }
 
-    private @Nullable SofaMessage getMessageAtPos(final int position) {
-        try {
-            return this.sofaMessages.get(position);
-        } catch (final IndexOutOfBoundsException ex) {
-            return null;
-        }
+    private static @Nullable SofaMessage getMessageAtPos(final List<SofaMessage> messages, final int position) {
+        if (position < 0 || position >= messages.size()) return null;
+        return messages.get(position);
     }
 
     @Override
@@ -397,17 +479,20 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     }
 
     public void clear() {
+        cancelPendingDiff();
         this.sofaMessages.clear();
         notifyDataSetChanged();
     }
 
     private User getCurrentLocalUser() {
+        if (this.localUser != null) return this.localUser;
         // Yes, this blocks. But realistically, a value should be always ready for returning.
-        return BaseApplication
+        this.localUser = BaseApplication
                 .get()
                 .getUserManager()
                 .getCurrentUser()
                 .toBlocking()
                 .value();
+        return this.localUser;
     }
 }
\ No newline at end of file
@@ -19,8 +19,10 @@ package com.toshi.view.adapter;
 
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -28,7 +30,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.toshi.R;
-import com.toshi.model.local.Conversation;
+import com.toshi.model.local.ConversationSummary;
 import com.toshi.model.local.User;
 import com.toshi.model.sofa.Message;
 import com.toshi.model.sofa.Payment;
@@ -46,14 +48,21 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import rx.Single;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
 public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implements ClickableViewHolder.OnClickListener {
 
-    private final ArrayList<Conversation> conversationsToDelete;
-    private List<Conversation> conversations;
-    private OnItemClickListener<Conversation> onItemClickListener;
+    private final ArrayList<ConversationSummary> conversationsToDelete;
+    private final KeyedList<ConversationSummary> conversations;
+    private OnItemClickListener<ConversationSummary> onItemClickListener;
+    private Subscription diffSubscription;
 
     public RecentAdapter() {
-        this.conversations = new ArrayList<>(0);
+        this.conversations = new KeyedList<>(ConversationSummary::getThreadId);
         this.conversationsToDelete = new ArrayList<>();
     }
 
@@ -65,7 +74,7 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
 
     @Override
     public void onBindViewHolder(final ThreadViewHolder holder, final int position) {
-        final Conversation conversation = this.conversations.get(position);
+        final ConversationSummary conversation = this.conversations.get(position);
         holder.setThread(conversation);
 
         final String formattedLatestMessage = formatLastMessage(conversation.getLatestMessage());
@@ -84,21 +93,69 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
             return;
         }
 
-        final Conversation clickedConversation = conversations.get(position);
+        final ConversationSummary clickedConversation = conversations.get(position);
         this.onItemClickListener.onItemClick(clickedConversation);
     }
 
-    public void setConversations(final List<Conversation> conversations) {
-        this.conversations = conversations;
-        notifyDataSetChanged();
+    // Replaces the current conversations. The diff is calculated on a background thread,
+    // onApplied is called on the main thread once the adapter reflects the new list.
+    public void setConversations(final List<ConversationSummary> conversations, @Nullable final Action0 onApplied) {
+        if (this.diffSubscription != null) this.diffSubscription.unsubscribe();
+
+        if (this.conversations.size() == 0) {
+            this.conversations.replaceAll(conversations);
+            notifyItemRangeInserted(0, conversations.size());
+            if (onApplied != null) onApplied.call();
+            return;
+        }
+
+        final List<ConversationSummary> oldConversations = this.conversations.snapshot();
+        final int generation = this.conversations.getGeneration();
+        this.diffSubscription =
+                Single.fromCallable(() -> this.conversations.calculateDiff(oldConversations, conversations, RecentAdapter::areContentsTheSame))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        diffResult -> applyDiff(diffResult, oldConversations, conversations, generation, onApplied),
+                        throwable -> LogUtil.exception(getClass(), "Error while diffing conversations", throwable)
+                );
     }
 
-    public RecentAdapter setOnItemClickListener(final OnItemClickListener<Conversation> onItemClickListener) {
+    private void applyDiff(final DiffUtil.DiffResult diffResult,
+                           final List<ConversationSummary> oldConversations,
+                           final List<ConversationSummary> newConversations,
+                           final int generation,
+                           @Nullable final Action0 onApplied) {
+        if (generation != this.conversations.getGeneration()) {
+            // The list changed while diffing, so the diff is redone with those changes kept
+            setConversations(this.conversations.mergeChangesSince(oldConversations, newConversations), onApplied);
+            return;
+        }
+        this.conversations.replaceAll(newConversations);
+        diffResult.dispatchUpdatesTo(this);
+        if (onApplied != null) onApplied.call();
+    }
+
+    private static boolean areContentsTheSame(final List<ConversationSummary> oldConversations,
+                                              final int oldPosition,
+                                              final List<ConversationSummary> newConversations,
+                                              final int newPosition) {
+        final ConversationSummary oldConversation = oldConversations.get(oldPosition);
+        final ConversationSummary newConversation = newConversations.get(newPosition);
+        final SofaMessage oldMessage = oldConversation.getLatestMessage();
+        final SofaMessage newMessage = newConversation.getLatestMessage();
+        return oldConversation.getUpdatedTime() == newConversation.getUpdatedTime()
+                && oldConversation.getNumberOfUnread() == newConversation.getNumberOfUnread()
+                && (oldMessage == null ? newMessage == null : oldMessage.equals(newMessage)
+                        && oldMessage.getSendState() == newMessage.getSendState());
+    }
+
+    public RecentAdapter setOnItemClickListener(final OnItemClickListener<ConversationSummary> onItemClickListener) {
         this.onItemClickListener = onItemClickListener;
         return this;
     }
 
-    public void updateConversation(final Conversation conversation) {
+    public void updateConversation(final ConversationSummary conversation) {
         final int position = this.conversations.indexOf(conversation);
         if (position == -1) {
             this.conversations.add(0, conversation);
@@ -107,11 +164,18 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
         }
 
         this.conversations.set(position, conversation);
+        if (position > 0 && conversation.getUpdatedTime() >= this.conversations.get(0).getUpdatedTime()) {
+            // Most recently updated conversations are listed first
+            this.conversations.move(position, 0);
+            notifyItemMoved(position, 0);
+            notifyItemChanged(0);
+            return;
+        }
         notifyItemChanged(position);
     }
 
     public void removeItemAtWithUndo(final int position, final RecyclerView parentView) {
-        final Conversation removedConversation = this.conversations.get(position);
+        final ConversationSummary removedConversation = this.conversations.get(position);
         final Snackbar snackbar = generateSnackbar(parentView);
         snackbar.setAction(
                 R.string.undo,
@@ -135,7 +199,7 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
     }
 
     @NonNull
-    private View.OnClickListener handleUndoRemove(final int position, final RecyclerView parentView, final Conversation removedConversation) {
+    private View.OnClickListener handleUndoRemove(final int position, final RecyclerView parentView, final ConversationSummary removedConversation) {
         return view -> {
             this.conversations.add(position, removedConversation);
             notifyItemInserted(position);
@@ -192,7 +256,7 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
     }
 
     public void doDelete() {
-        for (final Conversation conversationToDelete : conversationsToDelete) {
+        for (final ConversationSummary conversationToDelete : conversationsToDelete) {
             BaseApplication
                     .get()
                     .getSofaMessageManager()
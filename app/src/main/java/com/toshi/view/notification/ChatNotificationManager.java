@@ -37,8 +37,10 @@ import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 import com.toshi.view.notification.model.ChatNotification;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
@@ -48,7 +50,8 @@ public class ChatNotificationManager extends ToshiNotificationBuilder {
     public static final String KEY_TEXT_REPLY = "key_text_reply";
 
     private static String currentlyOpenConversation;
-    private static final Map<String, ChatNotification> activeNotifications = new HashMap<>();
+    // Incoming messages for different conversations are notified from different threads
+    private static final Map<String, ChatNotification> activeNotifications = new ConcurrentHashMap<>();
 
     public static void suppressNotificationsForConversation(final String conversationId) {
         currentlyOpenConversation = conversationId;
@@ -76,6 +79,28 @@ public class ChatNotificationManager extends ToshiNotificationBuilder {
         showChatNotification(recipient, sofaMessage);
     }
 
+    // Shows a batch of messages, rendering each affected conversation's notification only once
+    public static void showNotifications(final List<SofaMessage> sofaMessages) {
+        final Map<String, ChatNotification> updatedNotifications = new LinkedHashMap<>();
+        for (final SofaMessage sofaMessage : sofaMessages) {
+            if (sofaMessage == null) continue;
+            final Recipient recipient = new Recipient(sofaMessage.getSender());
+            if (sofaMessage.getType() != SofaType.PLAIN_TEXT) {
+                showChatNotification(recipient, sofaMessage);
+                continue;
+            }
+
+            final ChatNotification activeChatNotification = getAndCacheChatNotification(recipient);
+            if (activeChatNotification == null) continue;
+            activeChatNotification.addUnreadMessage(sofaMessage);
+            updatedNotifications.put(recipient.getThreadId(), activeChatNotification);
+        }
+
+        for (final ChatNotification activeChatNotification : updatedNotifications.values()) {
+            generateIconAndShowNotification(activeChatNotification, null);
+        }
+    }
+
     public static void showChatNotification(final Recipient sender, final String content) {
         final Message message = new Message().setBody(content);
         final String messageBody = SofaAdapters.get().toJson(message);
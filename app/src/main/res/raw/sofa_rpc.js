@@ -0,0 +1,31 @@
+// Routes the provider's node requests through SOFAHost.sendRpc, calls made in the same tick are sent as one batch
+(function() {
+    var provider = typeof web3 !== "undefined" ? web3.currentProvider : null;
+    if (typeof SOFAHost === "undefined" || !provider || !provider._providers) return;
+
+    var queue = [];
+
+    function flush() {
+        var calls = queue;
+        queue = [];
+        var payloads = calls.map(function(call) { return call.payload; });
+        var callbackId = SOFA.storeCallback(function(error, result) {
+            calls.forEach(function(call, index) {
+                if (error) return call.end(new Error(error));
+                var response = Array.isArray(result) ? result[index] : result;
+                if (!response) return call.end(new Error("No response"));
+                if (response.error) return call.end(new Error(response.error.message));
+                call.end(null, response.result);
+            });
+        });
+        SOFAHost.sendRpc(callbackId, JSON.stringify(payloads.length === 1 ? payloads[0] : payloads));
+    }
+
+    provider._providers.forEach(function(subprovider) {
+        if (!subprovider.rpcUrl) return;
+        subprovider.handleRequest = function(payload, next, end) {
+            queue.push({payload: payload, end: end});
+            if (queue.length === 1) setTimeout(flush, 0);
+        };
+    });
+})();
@@ -0,0 +1,111 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto;
+
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.toshi.crypto.util.HashUtil.sha3;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ECKeyTest {
+
+    // {private key, message hash, r, s, v}
+    private static final String[][] SIGNATURE_VECTORS = {
+            // The EIP-155 example transaction
+            {
+                    "4646464646464646464646464646464646464646464646464646464646464646",
+                    "daf5a779ae972f972197303d7b574746c7ef83eadac0f2791ad23db92e4c8e53",
+                    "28ef61340bd939bc2195fe537567866003e1a15d3c71ff63e1590620aa636276",
+                    "67cbe9d8997f761aecb703304b3800ccf555c9f3dc64214b297fb1966a3b6d83",
+                    "27"
+            },
+            // Private key 1 signing sha256("Satoshi Nakamoto"), a common RFC 6979 secp256k1 vector
+            {
+                    "0000000000000000000000000000000000000000000000000000000000000001",
+                    "a0dc65ffca799873cbea0ac274015b9526505daaaed385155425f7337704883e",
+                    "934b1ea10a4b3c1757e2b0c017d0b6143ce3c9a7e6a4a49860d7a6ab210ee3d8",
+                    "2442ce9d2b916064108014783e923ec36b49743e2ffa1c4496f01a512aafd9e5",
+                    "28"
+            }
+    };
+
+    private final ECKey key = ECKey.fromPrivate(sha3("toshi".getBytes()));
+
+    @Test
+    public void signMatchesKnownVectors() {
+        for (final String[] vector : SIGNATURE_VECTORS) {
+            final ECKey vectorKey = ECKey.fromPrivate(Hex.decode(vector[0]));
+            final byte[] messageHash = Hex.decode(vector[1]);
+
+            final ECKey.ECDSASignature signature = vectorKey.sign(messageHash);
+            assertThat(signature.r, is(new BigInteger(vector[2], 16)));
+            assertThat(signature.s, is(new BigInteger(vector[3], 16)));
+            assertThat(signature.v, is(Byte.valueOf(vector[4])));
+
+            final ECKey.ECDSASignature expected = signBySearchingRecoveryId(vectorKey, messageHash);
+            assertThat(signature, is(expected));
+            assertThat(signature.v, is(expected.v));
+        }
+    }
+
+    @Test
+    public void signMatchesSignatureWithSearchedRecoveryId() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            final byte[] messageHash = randomHash(random);
+            final ECKey.ECDSASignature signature = this.key.sign(messageHash);
+            final ECKey.ECDSASignature expected = signBySearchingRecoveryId(this.key, messageHash);
+            assertThat(signature, is(expected));
+            assertThat(signature.v, is(expected.v));
+        }
+    }
+
+    @Test
+    public void signatureRecoversSigningKey() throws Exception {
+        final byte[] messageHash = sha3("message".getBytes());
+        final ECKey.ECDSASignature signature = this.key.sign(messageHash);
+        assertThat(Arrays.equals(ECKey.signatureToKeyBytes(messageHash, signature), this.key.getPubKey()), is(true));
+    }
+
+    // The signing path used before the recovery id was derived from the nonce point
+    private ECKey.ECDSASignature signBySearchingRecoveryId(final ECKey signingKey, final byte[] messageHash) {
+        final ECKey.ECDSASignature signature = signingKey.doSign(messageHash);
+        final byte[] publicKey = signingKey.getPubKey();
+        for (int recId = 0; recId < 4; recId++) {
+            final byte[] recovered = ECKey.recoverPubBytesFromSignature(recId, signature, messageHash);
+            if (recovered != null && Arrays.equals(recovered, publicKey)) {
+                signature.v = (byte) (recId + 27);
+                return signature;
+            }
+        }
+        throw new IllegalStateException("No recovery id matched");
+    }
+
+    private byte[] randomHash(final Random random) {
+        final byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return hash;
+    }
+}
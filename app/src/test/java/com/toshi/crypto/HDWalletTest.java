@@ -24,6 +24,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
@@ -36,6 +39,10 @@ public class HDWalletTest {
     // Path `m/44'/60'/0'/0'
     private final String expectedPaymentAddress = "0x9858effd232b4033e47d90003d41ec34ecaeda94";
 
+    // Keys HDWallet stores its values under
+    private final String masterSeedKey = "ms";
+    private final String derivedKeysKey = "dk";
+
     // Mocks
     private SharedPreferences sharedPreferencesMock;
 
@@ -45,6 +52,14 @@ public class HDWalletTest {
         Mockito
                 .when(this.sharedPreferencesMock.getString(Mockito.anyString(), Mockito.anyString()))
                 .thenReturn(this.expectedMasterSeed);
+
+        final SharedPreferences.Editor editorMock = Mockito.mock(SharedPreferences.Editor.class);
+        Mockito
+                .when(editorMock.putString(Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(editorMock);
+        Mockito
+                .when(this.sharedPreferencesMock.edit())
+                .thenReturn(editorMock);
     }
 
     @Test
@@ -76,4 +91,83 @@ public class HDWalletTest {
                         .value();
         assertThat(wallet.getPaymentAddress(), is(this.expectedPaymentAddress));
     }
+
+    @Test
+    public void derivedKeysAreStoredAfterDerivingFromSeed() {
+        final Map<String, String> storedValues = new HashMap<>();
+        storedValues.put(this.masterSeedKey, this.expectedMasterSeed);
+
+        new HDWallet(createInMemoryPreferences(storedValues))
+                .getExistingWallet()
+                .toBlocking()
+                .value();
+        assertThat(storedValues.containsKey(this.derivedKeysKey), is(true));
+    }
+
+    @Test
+    public void storedDerivedKeysMatchKeysDerivedFromSeed() {
+        final Map<String, String> storedValues = new HashMap<>();
+        storedValues.put(this.masterSeedKey, this.expectedMasterSeed);
+        final SharedPreferences preferences = createInMemoryPreferences(storedValues);
+        final HDWallet derivedWallet =
+                new HDWallet(preferences)
+                        .getExistingWallet()
+                        .toBlocking()
+                        .value();
+
+        // Without the seed the wallet can only come from the stored keys
+        storedValues.remove(this.masterSeedKey);
+        final HDWallet storedWallet =
+                new HDWallet(preferences)
+                        .getExistingWallet()
+                        .toBlocking()
+                        .value();
+        assertThat(storedWallet.getOwnerAddress(), is(derivedWallet.getOwnerAddress()));
+        assertThat(storedWallet.getPaymentAddress(), is(derivedWallet.getPaymentAddress()));
+        assertThat(storedWallet.getOwnerAddress(), is(this.expectedOwnerAddress));
+        assertThat(storedWallet.getPaymentAddress(), is(this.expectedPaymentAddress));
+    }
+
+    @Test
+    public void clearRemovesStoredDerivedKeys() {
+        final Map<String, String> storedValues = new HashMap<>();
+        storedValues.put(this.masterSeedKey, this.expectedMasterSeed);
+        final HDWallet wallet =
+                new HDWallet(createInMemoryPreferences(storedValues))
+                        .getExistingWallet()
+                        .toBlocking()
+                        .value();
+
+        wallet.clear();
+        assertThat(storedValues.containsKey(this.derivedKeysKey), is(false));
+    }
+
+    private SharedPreferences createInMemoryPreferences(final Map<String, String> storedValues) {
+        final SharedPreferences preferences = Mockito.mock(SharedPreferences.class);
+        Mockito
+                .when(preferences.getString(Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(invocation -> {
+                    final String key = (String) invocation.getArguments()[0];
+                    final String defaultValue = (String) invocation.getArguments()[1];
+                    return storedValues.containsKey(key) ? storedValues.get(key) : defaultValue;
+                });
+
+        final SharedPreferences.Editor editor = Mockito.mock(SharedPreferences.Editor.class);
+        Mockito
+                .when(editor.putString(Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(invocation -> {
+                    storedValues.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+                    return editor;
+                });
+        Mockito
+                .when(editor.clear())
+                .thenAnswer(invocation -> {
+                    storedValues.clear();
+                    return editor;
+                });
+        Mockito
+                .when(preferences.edit())
+                .thenReturn(editor);
+        return preferences;
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto.util;
+
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class HashUtilTest {
+
+    private static final String EMPTY_HASH = "c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470";
+    private static final String ABC_HASH = "4e03657aea45a94fc7d47ba826c8d667c0d1e6e33a64a036ec44f58fa12d6c45";
+
+    @Test
+    public void sha3MatchesKnownHashes() {
+        assertThat(Hex.toHexString(HashUtil.sha3(new byte[0])), is(EMPTY_HASH));
+        assertThat(Hex.toHexString(HashUtil.sha3("abc".getBytes())), is(ABC_HASH));
+    }
+
+    @Test
+    public void sha3IntoBufferWritesAtOffset() {
+        final byte[] input = "xabcx".getBytes();
+        final byte[] output = new byte[40];
+        HashUtil.sha3(input, 1, 3, output, 8);
+        assertThat(Hex.toHexString(output, 8, 32), is(ABC_HASH));
+    }
+
+    @Test
+    public void sha3OfBuffersMatchesSha3OfBytes() {
+        final byte[] input = randomBytes(100 * 1024);
+        final String expected = Hex.toHexString(HashUtil.sha3(input));
+
+        assertThat(Hex.toHexString(HashUtil.sha3(ByteBuffer.wrap(input))), is(expected));
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(input.length);
+        directBuffer.put(input).flip();
+        assertThat(Hex.toHexString(HashUtil.sha3(directBuffer)), is(expected));
+
+        final Buffer okioBuffer = new Buffer().write(input);
+        assertThat(Hex.toHexString(HashUtil.sha3(okioBuffer)), is(expected));
+        assertThat(okioBuffer.size(), is(0L));
+    }
+
+    private byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto.util;
+
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RLPReaderTest {
+
+    @Test
+    public void readsTransactionFields() {
+        final byte[] to = randomBytes(20, 1);
+        final byte[] data = randomBytes(68, 2);
+        final byte[] encoded = RLP.encodeList(
+                RLP.encodeBigInteger(BigInteger.valueOf(9)),
+                RLP.encodeBigInteger(BigInteger.valueOf(20000000000L)),
+                RLP.encodeBigInteger(BigInteger.ZERO),
+                RLP.encodeElement(to),
+                RLP.encodeBigInteger(new BigInteger("1000000000000000000")),
+                RLP.encodeElement(data));
+
+        final RLPReader tx = new RLPReader(encoded).readList();
+        assertThat(tx.readLong(), is(9L));
+        assertThat(tx.readBigInteger(), is(BigInteger.valueOf(20000000000L)));
+        assertThat(tx.readInt(), is(0));
+        assertThat(Hex.toHexString(tx.readBytes()), is(Hex.toHexString(to)));
+        assertThat(tx.readBigInteger(), is(new BigInteger("1000000000000000000")));
+
+        final int dataOffset = tx.nextOffset();
+        assertThat(tx.nextLength(), is(data.length));
+        assertThat(Hex.toHexString(encoded, dataOffset, data.length), is(Hex.toHexString(data)));
+        final ByteBuffer slice = tx.readSlice();
+        assertThat(slice.remaining(), is(data.length));
+        assertThat(tx.hasNext(), is(false));
+    }
+
+    @Test
+    public void matchesDecode2OnNestedLists() {
+        final byte[] bloom = randomBytes(256, 3);
+        final byte[] topic = randomBytes(32, 4);
+        final byte[] encoded = RLP.encodeList(
+                RLP.encodeElement(randomBytes(32, 5)),
+                RLP.encodeBigInteger(BigInteger.valueOf(52000)),
+                RLP.encodeElement(bloom),
+                RLP.encodeList(RLP.encodeList(RLP.encodeElement(randomBytes(20, 6)), RLP.encodeList(RLP.encodeElement(topic)))));
+
+        assertSameStructure((RLPList) RLP.decode2(encoded).get(0), new RLPReader(encoded).readList());
+    }
+
+    @Test
+    public void readsFromBufferPositionWithoutMovingIt() {
+        final byte[] encoded = RLP.encodeList(RLP.encodeInt(1), RLP.encodeInt(2));
+        final ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 4);
+        buffer.position(4);
+        buffer.put(encoded);
+        buffer.position(4);
+
+        final RLPReader list = new RLPReader(buffer).readList();
+        assertThat(list.readInt(), is(1));
+        assertThat(list.readInt(), is(2));
+        assertThat(buffer.position(), is(4));
+    }
+
+    @Test
+    public void readEncodedIncludesHeader() {
+        final byte[] inner = RLP.encodeList(RLP.encodeElement(randomBytes(60, 7)));
+        final RLPReader reader = new RLPReader(RLP.encodeList(inner));
+        final ByteBuffer raw = reader.readList().readEncoded();
+        final byte[] rawBytes = new byte[raw.remaining()];
+        raw.get(rawBytes);
+        assertThat(Hex.toHexString(rawBytes), is(Hex.toHexString(inner)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void truncatedDataThrows() {
+        final byte[] encoded = RLP.encodeElement(randomBytes(100, 8));
+        final byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        new RLPReader(truncated).readBytes();
+    }
+
+    private static void assertSameStructure(final RLPList expected, final RLPReader actual) {
+        for (final RLPElement element : expected) {
+            if (element instanceof RLPList) {
+                assertThat(actual.isNextList(), is(true));
+                assertSameStructure((RLPList) element, actual.readList());
+            } else {
+                final byte[] expectedData = element.getRLPData();
+                final byte[] actualData = actual.readBytes();
+                assertThat(Hex.toHexString(actualData), is(expectedData == null ? "" : Hex.toHexString(expectedData)));
+            }
+        }
+        assertThat(actual.hasNext(), is(false));
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
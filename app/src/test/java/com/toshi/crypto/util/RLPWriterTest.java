@@ -0,0 +1,159 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.crypto.util;
+
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RLPWriterTest {
+
+    private static final byte[] TO = Hex.decode("b794f5ea0ba39494ce839613fffba74279579268");
+    private static final byte[] TRANSFER_DATA = Hex.decode("a9059cbb000000000000000000000000b794f5ea0ba39494ce839613fffba74279579268"
+            + "0000000000000000000000000000000000000000000000000de0b6b3a7640000");
+
+    @Test
+    public void transactionMatchesRlp() {
+        final byte[] r = randomBytes(32, 1);
+        final byte[] s = randomBytes(32, 2);
+        final byte[] expected = RLP.encodeList(
+                RLP.encodeBigInteger(BigInteger.valueOf(9)),
+                RLP.encodeBigInteger(BigInteger.valueOf(20000000000L)),
+                RLP.encodeBigInteger(BigInteger.valueOf(21000)),
+                RLP.encodeElement(TO),
+                RLP.encodeBigInteger(new BigInteger("1000000000000000000")),
+                RLP.encodeElement(TRANSFER_DATA),
+                RLP.encodeInt(28),
+                RLP.encodeElement(r),
+                RLP.encodeElement(s));
+
+        final byte[] actual = new RLPWriter()
+                .startList()
+                .writeLong(9)
+                .writeBigInteger(BigInteger.valueOf(20000000000L))
+                .writeInt(21000)
+                .writeBytes(TO)
+                .writeBigInteger(new BigInteger("1000000000000000000"))
+                .writeBytes(TRANSFER_DATA)
+                .writeInt(28)
+                .writeBytes(r)
+                .writeBytes(s)
+                .endList()
+                .toByteArray();
+
+        assertThat(Hex.toHexString(actual), is(Hex.toHexString(expected)));
+    }
+
+    @Test
+    public void receiptMatchesRlp() {
+        final byte[] postState = randomBytes(32, 3);
+        final byte[] bloom = randomBytes(256, 4);
+        final byte[][] topics = {randomBytes(32, 5), randomBytes(32, 6), randomBytes(32, 7)};
+        final byte[] logData = randomBytes(32, 8);
+
+        final byte[] expected = RLP.encodeList(
+                RLP.encodeElement(postState),
+                RLP.encodeBigInteger(BigInteger.valueOf(52000)),
+                RLP.encodeElement(bloom),
+                RLP.encodeList(RLP.encodeList(
+                        RLP.encodeElement(TO),
+                        RLP.encodeList(RLP.encodeElement(topics[0]), RLP.encodeElement(topics[1]), RLP.encodeElement(topics[2])),
+                        RLP.encodeElement(logData))));
+
+        final RLPWriter writer = new RLPWriter(16)
+                .startList()
+                .writeBytes(postState)
+                .writeLong(52000)
+                .writeBytes(bloom)
+                .startList()
+                .startList()
+                .writeBytes(TO)
+                .startList();
+        for (final byte[] topic : topics) writer.writeBytes(topic);
+        writer.endList()
+                .writeBytes(logData)
+                .endList()
+                .endList()
+                .endList();
+
+        assertThat(Hex.toHexString(writer.toByteArray()), is(Hex.toHexString(expected)));
+    }
+
+    @Test
+    public void precomputedListHeaderMatchesStartAndEnd() {
+        final byte[] data = randomBytes(70, 9);
+        final int payloadLength = RLPWriter.encodedLength(data) + RLPWriter.encodedLength(1000);
+
+        final byte[] precomputed = new RLPWriter()
+                .writeListHeader(payloadLength)
+                .writeBytes(data)
+                .writeLong(1000)
+                .toByteArray();
+        final byte[] wrapped = new RLPWriter()
+                .startList()
+                .writeBytes(data)
+                .writeLong(1000)
+                .endList()
+                .toByteArray();
+
+        assertThat(Hex.toHexString(precomputed), is(Hex.toHexString(wrapped)));
+        assertThat(precomputed.length, is(RLPWriter.encodedListLength(payloadLength)));
+    }
+
+    @Test
+    public void itemsOfEveryLengthMatchRlp() {
+        for (int length = 0; length < 300; length++) {
+            final byte[] data = randomBytes(length, length);
+            final byte[] actual = new RLPWriter(16).writeBytes(data).toByteArray();
+            assertThat(Hex.toHexString(actual), is(Hex.toHexString(RLP.encodeElement(data))));
+            assertThat(actual.length, is(RLPWriter.encodedLength(data)));
+        }
+    }
+
+    @Test
+    public void numbersMatchRlp() {
+        final long[] values = {0, 1, 0x7f, 0x80, 0xff, 0x100, 0xffff, 0x10000, Integer.MAX_VALUE, Long.MAX_VALUE};
+        for (final long value : values) {
+            final BigInteger bigValue = BigInteger.valueOf(value);
+            final String expected = Hex.toHexString(RLP.encodeBigInteger(bigValue));
+            assertThat(Hex.toHexString(new RLPWriter().writeLong(value).toByteArray()), is(expected));
+            assertThat(Hex.toHexString(new RLPWriter().writeBigInteger(bigValue).toByteArray()), is(expected));
+        }
+
+        final BigInteger large = BigInteger.ONE.shiftLeft(255);
+        assertThat(Hex.toHexString(new RLPWriter().writeBigInteger(large).toByteArray()),
+                is(Hex.toHexString(RLP.encodeBigInteger(large))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unclosedListThrows() {
+        new RLPWriter().startList().writeLong(1).toByteArray();
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
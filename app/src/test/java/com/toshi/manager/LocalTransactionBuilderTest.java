@@ -0,0 +1,142 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager;
+
+
+import com.toshi.crypto.util.TypeConverter;
+import com.toshi.model.network.UnsignedTransaction;
+import com.toshi.model.sofa.Payment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LocalTransactionBuilderTest {
+
+    private static final String FROM = "0x0D8775F648430679A709E98d2b0Cb6250d2887EF";
+    private static final String TO = "0xb794f5ea0ba39494ce839613fffba74279579268";
+    private static final String VALUE = "0xde0b6b3a7640000";
+    private static final BigInteger GAS_PRICE = BigInteger.valueOf(20000000000L);
+    private static final BigInteger GAS_LIMIT = BigInteger.valueOf(21000);
+    private static final BigInteger CHAIN_ID = BigInteger.valueOf(116);
+    // The signing payload from the EIP-155 example: nonce 9, 20 gwei, 21000 gas, 1 ether, chain id 1
+    private static final String EIP155_TO = "0x3535353535353535353535353535353535353535";
+    private static final String EIP155_PAYLOAD =
+            "0xec098504a817c800825208943535353535353535353535353535353535353535880de0b6b3a764000080018080";
+
+    private LocalTransactionBuilder builder;
+    private Payment payment;
+
+    @Before
+    public void setUp() {
+        this.builder = new LocalTransactionBuilder();
+        this.payment = new Payment()
+                .setFromAddress(FROM)
+                .setToAddress(TO)
+                .setValue(VALUE);
+    }
+
+    @Test
+    public void buildsNothingBeforeSeeingASkeleton() {
+        assertThat(this.builder.build(this.payment), is(nullValue()));
+    }
+
+    @Test
+    public void encodesEip155SigningPayload() {
+        final byte[] encoded = LocalTransactionBuilder.encode(
+                BigInteger.valueOf(9),
+                GAS_PRICE,
+                GAS_LIMIT,
+                Hex.decode(EIP155_TO.substring(2)),
+                TypeConverter.StringHexToBigInteger(VALUE),
+                BigInteger.ONE);
+
+        assertThat(TypeConverter.toJsonHex(encoded), is(EIP155_PAYLOAD));
+    }
+
+    @Test
+    public void buildsNextEip155PayloadAfterEip155Skeleton() {
+        final Payment eip155Payment = new Payment()
+                .setFromAddress(FROM)
+                .setToAddress(EIP155_TO)
+                .setValue(VALUE);
+        this.builder.learnFrom(eip155Payment, new UnsignedTransaction().setTransaction(EIP155_PAYLOAD));
+
+        // Only the nonce changes, from 9 to 10
+        assertThat(this.builder.build(eip155Payment).getTransaction(),
+                is("0xec0a8504a817c800825208943535353535353535353535353535353535353535880de0b6b3a764000080018080"));
+    }
+
+    @Test
+    public void buildsWithNextNonceAfterSkeleton() {
+        this.builder.learnFrom(this.payment, skeleton(5, VALUE, CHAIN_ID));
+
+        assertThat(this.builder.build(this.payment).getTransaction(), is(skeleton(6, VALUE, CHAIN_ID).getTransaction()));
+        assertThat(this.builder.build(this.payment).getTransaction(), is(skeleton(7, VALUE, CHAIN_ID).getTransaction()));
+    }
+
+    @Test
+    public void buildsLegacyTransactionsAfterLegacySkeleton() {
+        this.builder.learnFrom(this.payment, skeleton(5, VALUE, BigInteger.ZERO));
+
+        assertThat(this.builder.build(this.payment).getTransaction(), is(skeleton(6, VALUE, BigInteger.ZERO).getTransaction()));
+    }
+
+    @Test
+    public void ignoresSkeletonThatDoesNotMatchThePayment() {
+        this.builder.learnFrom(this.payment, skeleton(5, "0x1", CHAIN_ID));
+
+        assertThat(this.builder.build(this.payment), is(nullValue()));
+    }
+
+    @Test
+    public void needsASkeletonForNewRecipients() {
+        this.builder.learnFrom(this.payment, skeleton(5, VALUE, CHAIN_ID));
+        final Payment otherPayment = new Payment()
+                .setFromAddress(FROM)
+                .setToAddress("0x0000000000000000000000000000000000000001")
+                .setValue(VALUE);
+
+        assertThat(this.builder.build(otherPayment), is(nullValue()));
+    }
+
+    @Test
+    public void buildsNothingAfterInvalidate() {
+        this.builder.learnFrom(this.payment, skeleton(5, VALUE, CHAIN_ID));
+        this.builder.invalidate(FROM.toLowerCase());
+
+        assertThat(this.builder.build(this.payment), is(nullValue()));
+    }
+
+    private static UnsignedTransaction skeleton(final long nonce, final String value, final BigInteger chainId) {
+        final byte[] encoded = LocalTransactionBuilder.encode(
+                BigInteger.valueOf(nonce),
+                GAS_PRICE,
+                GAS_LIMIT,
+                Hex.decode(TO.substring(2)),
+                TypeConverter.StringHexToBigInteger(value),
+                chainId);
+        return new UnsignedTransaction().setTransaction(TypeConverter.toJsonHex(encoded));
+    }
+}
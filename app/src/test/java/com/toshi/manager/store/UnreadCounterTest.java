@@ -0,0 +1,108 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.manager.store;
+
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rx.observers.TestSubscriber;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class UnreadCounterTest {
+
+    @Test
+    public void tracksTotalAcrossConversations() {
+        final UnreadCounter counter = new UnreadCounter();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        counter.asObservable().subscribe(subscriber);
+
+        counter.seed(counts("a", 2, "b", 0));
+        counter.update(counts("b", 3));
+        counter.update(counts("a", 0));
+        counter.remove("b");
+
+        subscriber.assertValues(2, 5, 3, 0);
+    }
+
+    @Test
+    public void ignoresUpdatesBeforeSeed() {
+        final UnreadCounter counter = new UnreadCounter();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        counter.asObservable().subscribe(subscriber);
+
+        counter.update(counts("a", 4));
+        counter.seed(counts("a", 1));
+
+        subscriber.assertValues(1);
+    }
+
+    @Test
+    public void doesNotEmitWhenTotalIsUnchanged() {
+        final UnreadCounter counter = new UnreadCounter();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        counter.asObservable().subscribe(subscriber);
+
+        counter.seed(counts("a", 1));
+        counter.update(counts("a", 1));
+        counter.update(counts("a", 0, "b", 1));
+
+        subscriber.assertValues(1);
+    }
+
+    @Test
+    public void onlyTheFirstSeedRequestIsGranted() {
+        final UnreadCounter counter = new UnreadCounter();
+        assertThat(counter.requestSeed(), is(true));
+        assertThat(counter.requestSeed(), is(false));
+
+        counter.clear();
+        assertThat(counter.requestSeed(), is(true));
+    }
+
+    @Test
+    public void slowSubscriberOnlyGetsTheLatestTotal() {
+        final UnreadCounter counter = new UnreadCounter();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<>(0L);
+        counter.asObservable().subscribe(subscriber);
+
+        counter.seed(Collections.<String, Integer>emptyMap());
+        for (int i = 1; i <= 10; i++) {
+            counter.update(counts("a", i));
+        }
+        subscriber.requestMore(1);
+
+        subscriber.assertValues(10);
+    }
+
+    private static Map<String, Integer> counts(final Object... threadsAndCounts) {
+        final Map<String, Integer> counts = new HashMap<>();
+        final List<Object> values = Arrays.asList(threadsAndCounts);
+        for (int i = 0; i < values.size(); i += 2) {
+            counts.put((String) values.get(i), (Integer) values.get(i + 1));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview;
+
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class JsonRpcProxyTest {
+
+    private LocalNode node;
+    private JsonRpcProxy proxy;
+
+    @Before
+    public void setup() {
+        this.node = new LocalNode();
+        this.proxy = new JsonRpcProxy(this.node);
+    }
+
+    @Test
+    public void blockScopedCallsAreCached() {
+        final String request = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBalance\",\"params\":[\"0xabc\",\"latest\"]}";
+        final String first = send(request);
+        final String second = send(request.replace("\"id\":1", "\"id\":2"));
+
+        assertThat(first, containsString("\"id\":1,"));
+        assertThat(second, containsString("\"id\":2,"));
+        assertThat(second, containsString("\"result\":\"0x10\""));
+        assertThat(this.node.calls, is(1));
+    }
+
+    @Test
+    public void pendingCallsAreNotCached() {
+        final String request = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBalance\",\"params\":[\"0xabc\",\"pending\"]}";
+        send(request);
+        send(request);
+        assertThat(this.node.calls, is(2));
+    }
+
+    @Test
+    public void sendingTransactionInvalidatesBlockScopedResults() {
+        final String balance = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBalance\",\"params\":[\"0xabc\",\"latest\"]}";
+        send(balance);
+        send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"eth_sendRawTransaction\",\"params\":[\"0xf86c\"]}");
+        send(balance);
+        assertThat(this.node.calls, is(3));
+    }
+
+    @Test
+    public void receiptsAreOnlyCachedOnceKnown() {
+        final String unknown = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getTransactionReceipt\",\"params\":[\"0xunknown\"]}";
+        final String known = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getTransactionReceipt\",\"params\":[\"0xknown\"]}";
+
+        assertThat(send(unknown), containsString("\"result\":null"));
+        send(unknown);
+        send(known);
+        send(known);
+        assertThat(this.node.calls, is(3));
+    }
+
+    @Test
+    public void transactionsAreOnlyCachedOnceMined() {
+        final String pending = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getTransactionByHash\",\"params\":[\"0xpending\"]}";
+        final String mined = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getTransactionByHash\",\"params\":[\"0xmined\"]}";
+
+        assertThat(send(pending), containsString("\"hash\":\"0xpending\""));
+        send(pending);
+        send(mined);
+        send(mined);
+        assertThat(this.node.calls, is(3));
+    }
+
+    @Test
+    public void batchMissesAreForwardedOnceAndDuplicatesCoalesced() {
+        final String batch = "["
+                + "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_blockNumber\",\"params\":[]},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"eth_call\",\"params\":[{\"to\":\"0xabc\",\"data\":\"0x01\"},\"latest\"]},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"eth_call\",\"params\":[{\"to\":\"0xabc\",\"data\":\"0x01\"},\"latest\"]}"
+                + "]";
+        final String response = send(batch);
+
+        assertThat(this.node.posts, is(1));
+        assertThat(this.node.calls, is(2));
+        assertThat(response, containsString("\"id\":1,"));
+        assertThat(response, containsString("\"id\":3,"));
+        assertThat(response, containsString("\"result\":\"0x5\""));
+    }
+
+    @Test
+    public void nodeErrorsArePassedThroughAndNotCached() {
+        final String request = "{\"jsonrpc\":\"2.0\",\"id\":\"a\",\"method\":\"eth_call\",\"params\":[{\"to\":\"0xbad\"},\"latest\"]}";
+        assertThat(send(request), containsString("\"id\":\"a\""));
+        assertThat(send(request), containsString("execution error"));
+        assertThat(this.node.calls, is(2));
+    }
+
+    private String send(final String payload) {
+        return this.proxy.send(payload).toBlocking().value();
+    }
+
+    // Answers JSON-RPC requests the way a remote node would
+    private static class LocalNode implements JsonRpcProxy.Transport {
+
+        private final JsonAdapter<Object> adapter = new Moshi.Builder().build().adapter(Object.class);
+        private final JsonAdapter<List<Object>> listAdapter =
+                new Moshi.Builder().build().adapter(Types.newParameterizedType(List.class, Object.class));
+        private int posts;
+        private int calls;
+
+        @Override
+        public synchronized String post(final String body) throws IOException {
+            this.posts++;
+            if (!body.startsWith("[")) {
+                return this.adapter.toJson(answer((Map<?, ?>) this.adapter.fromJson(body)));
+            }
+
+            final List<Object> responses = new ArrayList<>();
+            for (final Object request : this.listAdapter.fromJson(body)) {
+                responses.add(answer((Map<?, ?>) request));
+            }
+            return this.listAdapter.toJson(responses);
+        }
+
+        private Map<String, Object> answer(final Map<?, ?> request) {
+            this.calls++;
+            final Map<String, Object> response = new LinkedHashMap<>();
+            response.put("jsonrpc", "2.0");
+            response.put("id", request.get("id"));
+
+            final String method = (String) request.get("method");
+            final List<?> params = (List<?>) request.get("params");
+            switch (method) {
+                case "eth_blockNumber":
+                    response.put("result", "0x5");
+                    break;
+                case "eth_getBalance":
+                    response.put("result", "0x10");
+                    break;
+                case "eth_call": {
+                    final Map<?, ?> call = (Map<?, ?>) params.get(0);
+                    if ("0xbad".equals(call.get("to"))) {
+                        final Map<String, Object> error = new LinkedHashMap<>();
+                        error.put("code", -32000);
+                        error.put("message", "execution error");
+                        response.put("error", error);
+                    } else {
+                        response.put("result", "0x5");
+                    }
+                    break;
+                }
+                case "eth_getTransactionReceipt":
+                    response.put("result", "0xknown".equals(params.get(0)) ? new LinkedHashMap<>() : null);
+                    break;
+                case "eth_getTransactionByHash": {
+                    final Map<String, Object> transaction = new LinkedHashMap<>();
+                    transaction.put("hash", params.get(0));
+                    transaction.put("blockHash", "0xmined".equals(params.get(0)) ? "0xb10c" : null);
+                    response.put("result", transaction);
+                    break;
+                }
+                default:
+                    response.put("result", "0x1");
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.presenter.webview;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.Okio;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SofaScriptInjectingStreamTest {
+
+    private static final String SCRIPT = "<script>sofa</script>";
+
+    @Test
+    public void injectsBeforeFirstScriptTag() throws IOException {
+        final String page = "<html><head><script src=a.js></script><script></script></head></html>";
+        final String expected = "<html><head>" + SCRIPT + "<script src=a.js></script><script></script></head></html>";
+        assertThat(inject(page), is(expected));
+    }
+
+    @Test
+    public void matchesScriptTagCaseInsensitively() throws IOException {
+        assertThat(inject("<p><SCRIPT>x</SCRIPT>"), is("<p>" + SCRIPT + "<SCRIPT>x</SCRIPT>"));
+    }
+
+    @Test
+    public void leavesPagesWithoutScriptTagUnchanged() throws IOException {
+        assertThat(inject("<html><scrip<<scr</html><scrip"), is("<html><scrip<<scr</html><scrip"));
+    }
+
+    @Test
+    public void findsScriptTagSplitAcrossChunks() throws IOException {
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 8190; i++) padding.append('a');
+        final String page = padding + "<<script></script>";
+        assertThat(inject(page), is(padding + "<" + SCRIPT + "<script></script>"));
+    }
+
+    private String inject(final String page) throws IOException {
+        final Buffer source = new Buffer().writeUtf8(page);
+        final SofaScriptInjectingStream stream = new SofaScriptInjectingStream(source, SCRIPT.getBytes("UTF-8"));
+        final String injected = Okio.buffer(Okio.source(stream)).readUtf8();
+        stream.close();
+        return injected;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.util;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void tasksWithSameKeyRunInSubmissionOrder() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        final int taskCount = 500;
+        final CountDownLatch done = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            final int value = i;
+            executor.execute("thread", () -> {
+                results.add(value);
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < taskCount; i++) {
+            assertThat(results.get(i), is(i));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void tasksWithDifferentKeysRunConcurrently() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+
+        // Each task waits for the other to start, so this only finishes if they run in parallel
+        final Runnable task = () -> {
+            bothStarted.countDown();
+            try {
+                if (bothStarted.await(5, TimeUnit.SECONDS)) done.countDown();
+            } catch (final InterruptedException ignored) {}
+        };
+        executor.execute("first", task);
+        executor.execute("second", task);
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        pool.shutdown();
+    }
+
+    @Test
+    public void failingTaskDoesNotBlockLaterTasks() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(1);
+        final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute("thread", () -> { throw new IllegalStateException(); });
+        executor.execute("thread", done::countDown);
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+        assertThat(executor.getPendingTaskCount(), is(0));
+    }
+
+    @Test
+    public void shutdownDropsQueuedTasks() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(1);
+        final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+
+        executor.execute("thread", () -> {
+            firstStarted.countDown();
+            try {
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException ignored) {}
+            results.add(0);
+        });
+        executor.execute("thread", () -> results.add(1));
+        assertThat(firstStarted.await(5, TimeUnit.SECONDS), is(true));
+
+        executor.shutdown();
+        executor.execute("thread", () -> results.add(2));
+        releaseFirst.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(results, is(Collections.singletonList(0)));
+        assertThat(executor.getPendingTaskCount(), is(0));
+    }
+}
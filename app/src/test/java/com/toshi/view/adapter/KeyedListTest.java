@@ -0,0 +1,87 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.toshi.view.adapter;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class KeyedListTest {
+
+    private KeyedList<String[]> keyedList;
+    private List<String[]> snapshot;
+
+    // Items are {key, version} pairs
+    @Before
+    public void setup() {
+        this.keyedList = new KeyedList<>(item -> item[0]);
+        this.keyedList.replaceAll(Arrays.asList(item("a", "1"), item("b", "1"), item("c", "1")));
+        this.snapshot = this.keyedList.snapshot();
+    }
+
+    @Test
+    public void mergeWithoutChangesReturnsNewItems() {
+        final List<String[]> newItems = Arrays.asList(item("a", "2"), item("c", "2"));
+        final List<String[]> merged = this.keyedList.mergeChangesSince(this.snapshot, newItems);
+        assertThat(toStrings(merged), is(Arrays.asList("a2", "c2")));
+    }
+
+    @Test
+    public void mergeKeepsItemsAddedSinceSnapshot() {
+        this.keyedList.add(item("d", "1"));
+        this.keyedList.add(0, item("e", "1"));
+        final List<String[]> newItems = Arrays.asList(item("a", "2"), item("b", "2"), item("c", "2"));
+        final List<String[]> merged = this.keyedList.mergeChangesSince(this.snapshot, newItems);
+        assertThat(toStrings(merged), is(Arrays.asList("e1", "a2", "b2", "c2", "d1")));
+    }
+
+    @Test
+    public void mergeKeepsItemsReplacedSinceSnapshot() {
+        this.keyedList.set(1, item("b", "3"));
+        final List<String[]> newItems = Arrays.asList(item("a", "2"), item("b", "2"));
+        final List<String[]> merged = this.keyedList.mergeChangesSince(this.snapshot, newItems);
+        assertThat(toStrings(merged), is(Arrays.asList("a2", "b3")));
+    }
+
+    @Test
+    public void mergeLeavesOutItemsRemovedSinceSnapshot() {
+        this.keyedList.remove(0);
+        final List<String[]> newItems = Arrays.asList(item("a", "2"), item("b", "2"), item("c", "2"));
+        final List<String[]> merged = this.keyedList.mergeChangesSince(this.snapshot, newItems);
+        assertThat(toStrings(merged), is(Arrays.asList("b2", "c2")));
+    }
+
+    private static String[] item(final String key, final String version) {
+        return new String[] {key, version};
+    }
+
+    private static List<String> toStrings(final List<String[]> items) {
+        final List<String> strings = new ArrayList<>(items.size());
+        for (final String[] item : items) {
+            strings.add(item[0] + item[1]);
+        }
+        return strings;
+    }
+}